@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request encoding and response decoding done for every command and poll.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YeelightCodecBenchmark {
+
+    //listed explicitly, PROPS_RESPONSE carries one value per property in this order
+    private static final int ALL_PROPERTIES = 1 << YeelightProps.POWER | 1 << YeelightProps.BRIGHT | 1 << YeelightProps.CT
+            | 1 << YeelightProps.HUE | 1 << YeelightProps.SAT | 1 << YeelightProps.RGB | 1 << YeelightProps.NL_BR
+            | 1 << YeelightProps.FLOWING;
+    private static final Object[] GET_PROP_PARAMS = YeelightProps.getNames(ALL_PROPERTIES);
+    private static final Object[] SET_BRIGHT_PARAMS = {75, "smooth", 500};
+    private static final Object[] SET_SCENE_PARAMS = {"hsv", 240, 80, 75};
+
+    private static final String PROPS_RESPONSE = "{\"id\":1042,\"result\":[\"on\",\"75\",\"4000\",\"240\",\"80\",\"16711680\",\"0\",\"1\"]}";
+    private static final String PROPS_NOTIFICATION = "{\"method\":\"props\",\"params\":{\"power\":\"on\",\"bright\":\"75\",\"ct\":\"4000\"}}";
+    private static final String OK_RESPONSE = "{\"id\":1043,\"result\":[\"ok\"]}";
+    private static final String ERROR_RESPONSE = "{\"id\":1044,\"error\":{\"code\":-1,\"message\":\"client quota exceeded\"}}";
+
+    private final ByteArrayOutputStream request = new ByteArrayOutputStream(128);
+    private long id;
+
+    @Benchmark
+    public ByteArrayOutputStream encodeGetProp() {
+        request.reset();
+        YeelightCodec.encodeRequest(request, ++id, "get_prop", GET_PROP_PARAMS);
+        return request;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encodeSetBright() {
+        request.reset();
+        YeelightCodec.encodeRequest(request, ++id, "set_bright", SET_BRIGHT_PARAMS);
+        return request;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encodeSetScene() {
+        request.reset();
+        YeelightCodec.encodeRequest(request, ++id, "set_scene", SET_SCENE_PARAMS);
+        return request;
+    }
+
+    @Benchmark
+    public YeelightProps decodeProps() {
+        YeelightProps props = new YeelightProps();
+        YeelightCodec.decodeProps(PROPS_RESPONSE, ALL_PROPERTIES, props);
+        return props;
+    }
+
+    @Benchmark
+    public YeelightProps decodeNotification() {
+        YeelightProps props = new YeelightProps();
+        YeelightCodec.decodeNotification(PROPS_NOTIFICATION, props);
+        return props;
+    }
+
+    @Benchmark
+    public long decodeId() {
+        return YeelightCodec.decodeId(OK_RESPONSE);
+    }
+
+    @Benchmark
+    public String decodeError() {
+        return YeelightCodec.decodeError(ERROR_RESPONSE);
+    }
+}
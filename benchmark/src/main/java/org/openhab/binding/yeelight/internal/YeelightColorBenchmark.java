@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The color conversions of a SET_RGB poll result and command, compared with
+ * the java.awt.Color conversion they replace.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YeelightColorBenchmark {
+
+    private int rgb = 0x3a7fd2;
+    private int hue = 213;
+    private int saturation = 73;
+    private int brightness = 82;
+
+    @Benchmark
+    public int rgbToHsb() {
+        return YeelightColor.getHue(rgb) + YeelightColor.getSaturation(rgb) + YeelightColor.getBrightness(rgb);
+    }
+
+    @Benchmark
+    public float[] rgbToHsbAwt() {
+        Color color = new Color(rgb);
+        return Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
+    }
+
+    @Benchmark
+    public int hsbToRgb() {
+        return YeelightColor.fromHSB(hue, saturation, brightness);
+    }
+
+    @Benchmark
+    public int hsbToRgbAwt() {
+        return Color.HSBtoRGB(hue / 360f, saturation / 100f, brightness / 100f);
+    }
+}
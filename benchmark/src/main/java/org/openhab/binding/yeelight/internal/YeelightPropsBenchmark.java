@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per cycle work of the binding which does not touch the network: choosing
+ * the locations due for a poll and diffing their snapshots before publishing.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YeelightPropsBenchmark {
+
+    @Param({"10", "100"})
+    public int locationCount;
+
+    private final List<String> locations = new ArrayList<>();
+    private final YeelightPollScheduler scheduler = new YeelightPollScheduler();
+    private YeelightProps previous;
+    private YeelightProps unchanged;
+    private YeelightProps changed;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < locationCount; i++) {
+            String location = "192.168.1." + i + ":55443";
+            locations.add(location);
+            //half of the locations are due
+            if (i % 2 == 0)
+                scheduler.polled(location, false);
+        }
+
+        previous = new YeelightProps();
+        for (int property = 0; property < YeelightProps.NAMES.length; property++) {
+            previous.set(property, property * 10);
+        }
+        unchanged = previous.copy();
+        changed = previous.copy();
+        changed.set(YeelightProps.BRIGHT, 99);
+    }
+
+    @Benchmark
+    public int selectDueLocations() {
+        long now = System.currentTimeMillis();
+        int due = 0;
+        for (String location : locations) {
+            if (scheduler.isDue(location, now))
+                due++;
+        }
+        return due;
+    }
+
+    @Benchmark
+    public int diffUnchanged() {
+        return unchanged.diff(previous);
+    }
+
+    @Benchmark
+    public int diffChanged() {
+        return changed.diff(previous);
+    }
+
+    @Benchmark
+    public YeelightProps copy() {
+        return previous.copy();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the SSDP advertisements received by the discovery, every device
+ * sends one per search and periodically on its own.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YeelightSsdpMessageBenchmark {
+
+    private static final byte[] NOTIFY = ("NOTIFY * HTTP/1.1\r\n"
+            + "Host: 239.255.255.250:1982\r\n"
+            + "Cache-Control: max-age=3600\r\n"
+            + "Location: yeelight://192.168.1.239:55443\r\n"
+            + "NTS: ssdp:alive\r\n"
+            + "Server: POSIX, UPnP/1.0 YGLC/1\r\n"
+            + "id: 0x000000000015243f\r\n"
+            + "model: color\r\n"
+            + "fw_ver: 18\r\n"
+            + "support: get_prop set_default set_power toggle set_bright start_cf stop_cf set_scene cron_add "
+            + "cron_get cron_del set_ct_abx set_rgb set_hsv set_adjust set_music set_name\r\n"
+            + "power: on\r\n"
+            + "bright: 100\r\n"
+            + "color_mode: 2\r\n"
+            + "ct: 4000\r\n"
+            + "rgb: 16711680\r\n"
+            + "hue: 100\r\n"
+            + "sat: 35\r\n"
+            + "name: my_bulb\r\n").getBytes(Charset.forName("UTF-8"));
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private final YeelightSsdpMessage message = new YeelightSsdpMessage();
+
+    private ByteBuffer packet() {
+        buffer.clear();
+        buffer.put(NOTIFY);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public boolean parse() {
+        return message.parse(packet());
+    }
+
+    @Benchmark
+    public void parseState(Blackhole blackhole) {
+        message.parse(packet());
+        blackhole.consume(message.equals(YeelightSsdpMessage.POWER, "on"));
+        blackhole.consume(message.getInt(YeelightSsdpMessage.BRIGHT));
+        blackhole.consume(message.getInt(YeelightSsdpMessage.CT));
+        blackhole.consume(message.getInt(YeelightSsdpMessage.RGB));
+        blackhole.consume(message.getInt(YeelightSsdpMessage.HUE));
+        blackhole.consume(message.getInt(YeelightSsdpMessage.SAT));
+    }
+
+    @Benchmark
+    public void parseDevice(Blackhole blackhole) {
+        message.parse(packet());
+        blackhole.consume(message.getString(YeelightSsdpMessage.ID));
+        blackhole.consume(message.getLocation());
+        blackhole.consume(message.getMaxAge());
+    }
+}
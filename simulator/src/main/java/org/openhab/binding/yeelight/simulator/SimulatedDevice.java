@@ -0,0 +1,398 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A single simulated device. It accepts any number of control connections,
+ * answers every request in the order received and pushes a props notification
+ * to all connections when its state changes.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class SimulatedDevice implements Runnable {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    static final String MODEL = "color";
+    static final String SUPPORT = "get_prop set_default set_power toggle set_bright start_cf stop_cf set_scene "
+            + "set_ct_abx set_rgb set_hsv set_music set_name";
+
+    private final String id;
+    private final InetAddress address;
+    private final int port;
+    private final YeelightSimulator options;
+    private final Random random = new Random();
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private ServerSocket serverSocket;
+
+    //state, guarded by this
+    private boolean power = true;
+    private int bright = 100;
+    private int ct = 4000;
+    private int hue = 0;
+    private int sat = 0;
+    private int rgb = 0xffffff;
+    private int colorMode = 2;
+    private int nightLightBright = 0;
+    private boolean flowing = false;
+    private String name = "";
+    //times of the accepted commands of the last minute
+    private final ArrayDeque<Long> commandTimes = new ArrayDeque<>();
+
+    SimulatedDevice(String id, InetAddress address, int port, YeelightSimulator options) {
+        this.id = id;
+        this.address = address;
+        this.port = port;
+        this.options = options;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getLocation() {
+        return address.getHostAddress() + ":" + port;
+    }
+
+    void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(address, port));
+        Thread thread = new Thread(this, "device " + getLocation());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void run() {
+        while (true) {
+            try {
+                Client client = new Client(serverSocket.accept());
+                clients.add(client);
+                client.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the SSDP headers describing the device and its state
+     */
+    synchronized String getAdvertisedState() {
+        return "id: " + id + "\r\n"
+                + "model: " + MODEL + "\r\n"
+                + "fw_ver: 18\r\n"
+                + "support: " + SUPPORT + "\r\n"
+                + "power: " + (power ? "on" : "off") + "\r\n"
+                + "bright: " + bright + "\r\n"
+                + "color_mode: " + colorMode + "\r\n"
+                + "ct: " + ct + "\r\n"
+                + "rgb: " + rgb + "\r\n"
+                + "hue: " + hue + "\r\n"
+                + "sat: " + sat + "\r\n"
+                + "name: " + name + "\r\n";
+    }
+
+    /**
+     * @return the response line or null if the request is malformed
+     */
+    String handle(String line, Map<String, String> changes) {
+        SimulatorRequest request = SimulatorRequest.parse(line);
+        if (request == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (!"get_prop".equals(request.method) && !acquire()) {
+                return error(request.id, "client quota exceeded");
+            }
+            try {
+                String result = execute(request, changes);
+                if (result == null) {
+                    return error(request.id, "method not supported");
+                }
+                return "{\"id\":" + request.id + ",\"result\":[" + result + "]}";
+            } catch (IllegalArgumentException e) {
+                return error(request.id, "invalid params");
+            }
+        }
+    }
+
+    private boolean acquire() {
+        if (options.rate <= 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        while (!commandTimes.isEmpty() && now - commandTimes.peekFirst() >= 60000) {
+            commandTimes.pollFirst();
+        }
+        if (commandTimes.size() >= options.rate) {
+            return false;
+        }
+        commandTimes.addLast(now);
+        return true;
+    }
+
+    private static String error(long id, String message) {
+        return "{\"id\":" + id + ",\"error\":{\"code\":-1,\"message\":\"" + message + "\"}}";
+    }
+
+    private String execute(SimulatorRequest request, Map<String, String> changes) {
+        switch (request.method) {
+            case "get_prop":
+                StringBuilder result = new StringBuilder();
+                for (int i = 0; i < request.params.size(); i++) {
+                    if (i > 0) {
+                        result.append(',');
+                    }
+                    String value = getProperty(String.valueOf(request.params.get(i)));
+                    result.append('"').append(value != null ? value : "").append('"');
+                }
+                return result.toString();
+            case "set_power":
+                setPower("on".equals(request.getString(0)), changes);
+                if (request.params.size() > 3) {
+                    nightLightBright = request.getInt(3) == 5 ? Math.max(bright, 1) : 0;
+                    changes.put("nl_br", String.valueOf(nightLightBright));
+                }
+                return "\"ok\"";
+            case "toggle":
+                setPower(!power, changes);
+                return "\"ok\"";
+            case "set_bright":
+                setBright(request.getInt(0), changes);
+                return "\"ok\"";
+            case "set_ct_abx":
+                setCt(request.getInt(0), changes);
+                return "\"ok\"";
+            case "set_rgb":
+                setRgb(request.getInt(0), changes);
+                return "\"ok\"";
+            case "set_hsv":
+                setHsv(request.getInt(0), request.getInt(1), changes);
+                return "\"ok\"";
+            case "set_scene":
+                String scene = request.getString(0);
+                if ("color".equals(scene)) {
+                    setRgb(request.getInt(1), changes);
+                    setBright(request.getInt(2), changes);
+                } else if ("hsv".equals(scene)) {
+                    setHsv(request.getInt(1), request.getInt(2), changes);
+                    setBright(request.getInt(3), changes);
+                } else if ("ct".equals(scene)) {
+                    setCt(request.getInt(1), changes);
+                    setBright(request.getInt(2), changes);
+                } else {
+                    throw new IllegalArgumentException(scene);
+                }
+                setPower(true, changes);
+                return "\"ok\"";
+            case "start_cf":
+                setFlowing(true, changes);
+                return "\"ok\"";
+            case "stop_cf":
+                setFlowing(false, changes);
+                return "\"ok\"";
+            case "set_music":
+                //the simulated device keeps using the control connection
+                return "\"ok\"";
+            case "set_name":
+                name = request.getString(0);
+                changes.put("name", name);
+                return "\"ok\"";
+            default:
+                return null;
+        }
+    }
+
+    private String getProperty(String property) {
+        switch (property) {
+            case "power":
+                return power ? "on" : "off";
+            case "bright":
+                return String.valueOf(bright);
+            case "ct":
+                return String.valueOf(ct);
+            case "rgb":
+                return String.valueOf(rgb);
+            case "hue":
+                return String.valueOf(hue);
+            case "sat":
+                return String.valueOf(sat);
+            case "color_mode":
+                return String.valueOf(colorMode);
+            case "nl_br":
+                return String.valueOf(nightLightBright);
+            case "flowing":
+                return flowing ? "1" : "0";
+            case "name":
+                return name;
+            default:
+                return null;
+        }
+    }
+
+    private void setPower(boolean value, Map<String, String> changes) {
+        if (power != value) {
+            power = value;
+            changes.put("power", value ? "on" : "off");
+        }
+    }
+
+    private void setBright(int value, Map<String, String> changes) {
+        if (value < 1 || value > 100) {
+            throw new IllegalArgumentException("bright " + value);
+        }
+        bright = value;
+        changes.put("bright", String.valueOf(value));
+    }
+
+    private void setCt(int value, Map<String, String> changes) {
+        if (value < 1700 || value > 6500) {
+            throw new IllegalArgumentException("ct " + value);
+        }
+        ct = value;
+        colorMode = 2;
+        changes.put("ct", String.valueOf(value));
+        changes.put("color_mode", "2");
+    }
+
+    private void setRgb(int value, Map<String, String> changes) {
+        if (value < 0 || value > 0xffffff) {
+            throw new IllegalArgumentException("rgb " + value);
+        }
+        rgb = value;
+        colorMode = 1;
+        changes.put("rgb", String.valueOf(value));
+        changes.put("color_mode", "1");
+    }
+
+    private void setHsv(int h, int s, Map<String, String> changes) {
+        if (h < 0 || h > 359 || s < 0 || s > 100) {
+            throw new IllegalArgumentException("hsv " + h + " " + s);
+        }
+        hue = h;
+        sat = s;
+        colorMode = 3;
+        changes.put("hue", String.valueOf(h));
+        changes.put("sat", String.valueOf(s));
+        changes.put("color_mode", "3");
+    }
+
+    private void setFlowing(boolean value, Map<String, String> changes) {
+        if (flowing != value) {
+            flowing = value;
+            changes.put("flowing", value ? "1" : "0");
+        }
+    }
+
+    private void notifyClients(Map<String, String> changes) {
+        StringBuilder notification = new StringBuilder("{\"method\":\"props\",\"params\":{");
+        boolean first = true;
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (!first) {
+                notification.append(',');
+            }
+            first = false;
+            notification.append('"').append(change.getKey()).append("\":\"").append(change.getValue()).append('"');
+        }
+        notification.append("}}");
+        for (Client client : clients) {
+            client.send(notification.toString());
+        }
+    }
+
+    /**
+     * One control connection, requests are answered in order on its own thread.
+     */
+    private class Client implements Runnable {
+        private final Socket socket;
+        private final OutputStream output;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.output = socket.getOutputStream();
+        }
+
+        void start() {
+            Thread thread = new Thread(this, "client " + getLocation());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    Map<String, String> changes = new LinkedHashMap<>();
+                    String response = handle(line, changes);
+                    delay();
+                    if (response != null && random.nextDouble() >= options.loss) {
+                        send(response);
+                    }
+                    if (!changes.isEmpty()) {
+                        notifyClients(changes);
+                    }
+                }
+            } catch (IOException e) {
+                //connection closed
+            } finally {
+                clients.remove(this);
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    //silence
+                }
+            }
+        }
+
+        private void delay() {
+            int delay = options.latency + (options.jitter > 0 ? random.nextInt(options.jitter) : 0);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        synchronized void send(String line) {
+            try {
+                output.write((line + "\r\n").getBytes(CHARSET));
+                output.flush();
+            } catch (IOException e) {
+                try {
+                    socket.close();
+                } catch (IOException e2) {
+                    //silence
+                }
+            }
+        }
+    }
+}
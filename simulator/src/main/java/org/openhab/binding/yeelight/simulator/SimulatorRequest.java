@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A JSON-RPC request received by a simulated device. Only the flat requests the
+ * Yeelight protocol uses are understood: a numeric id, a method name and an
+ * array of string and number parameters.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class SimulatorRequest {
+
+    long id = -1;
+    String method;
+    final List<Object> params = new ArrayList<>();
+
+    private final String line;
+    private int pos;
+
+    private SimulatorRequest(String line) {
+        this.line = line;
+    }
+
+    /**
+     * @return the request or null if the line is no valid request
+     */
+    static SimulatorRequest parse(String line) {
+        SimulatorRequest request = new SimulatorRequest(line);
+        try {
+            request.parseObject();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+        return request.id >= 0 && request.method != null ? request : null;
+    }
+
+    String getString(int index) {
+        if (index >= params.size()) {
+            throw new IllegalArgumentException("missing param " + index);
+        }
+        return String.valueOf(params.get(index));
+    }
+
+    int getInt(int index) {
+        if (index >= params.size() || !(params.get(index) instanceof Long)) {
+            throw new IllegalArgumentException("param " + index + " is no number");
+        }
+        return ((Long) params.get(index)).intValue();
+    }
+
+    private void parseObject() {
+        expect('{');
+        while (!consume('}')) {
+            String key = readString();
+            expect(':');
+            if ("id".equals(key)) {
+                id = (Long) readValue();
+            } else if ("method".equals(key)) {
+                method = (String) readValue();
+            } else if ("params".equals(key)) {
+                expect('[');
+                while (!consume(']')) {
+                    params.add(readValue());
+                    consume(',');
+                }
+            } else {
+                readValue();
+            }
+            consume(',');
+        }
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        char c = line.charAt(pos);
+        if (c == '"') {
+            return readString();
+        }
+        int start = pos;
+        if (c == '-') {
+            pos++;
+        }
+        while (pos < line.length() && Character.isDigit(line.charAt(pos))) {
+            pos++;
+        }
+        if (pos == start) {
+            throw new IllegalArgumentException("unexpected " + c);
+        }
+        return Long.parseLong(line.substring(start, pos));
+    }
+
+    private String readString() {
+        expect('"');
+        int end = line.indexOf('"', pos);
+        if (end < 0) {
+            throw new IllegalArgumentException("unterminated string");
+        }
+        String value = line.substring(pos, end);
+        pos = end + 1;
+        return value;
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw new IllegalArgumentException("expected " + c);
+        }
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (pos < line.length() && line.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < line.length() && line.charAt(pos) <= ' ') {
+            pos++;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.simulator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Answers the SSDP searches of the binding for all simulated devices and
+ * optionally sends periodic NOTIFY advertisements to the multicast group.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class SsdpResponder implements Runnable {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final String MCAST_ADDR = "239.255.255.250";
+    private static final int MCAST_PORT = 1982;
+
+    private final InetAddress address;
+    private final List<SimulatedDevice> devices;
+    private final long notifyInterval;
+    private MulticastSocket socket;
+
+    SsdpResponder(InetAddress address, List<SimulatedDevice> devices, long notifyInterval) {
+        this.address = address;
+        this.devices = devices;
+        this.notifyInterval = notifyInterval;
+    }
+
+    void start() throws IOException {
+        NetworkInterface networkInterface = NetworkInterface.getByInetAddress(address);
+        socket = new MulticastSocket(MCAST_PORT);
+        if (networkInterface != null) {
+            socket.setNetworkInterface(networkInterface);
+        }
+        socket.joinGroup(new InetSocketAddress(MCAST_ADDR, MCAST_PORT), networkInterface);
+
+        Thread thread = new Thread(this, "SSDP responder");
+        thread.setDaemon(true);
+        thread.start();
+
+        if (notifyInterval > 0) {
+            Thread notifier = new Thread(new Runnable() {
+                public void run() {
+                    advertise();
+                }
+            }, "SSDP notifier");
+            notifier.setDaemon(true);
+            notifier.start();
+        }
+    }
+
+    public void run() {
+        byte[] buffer = new byte[1024];
+        while (!socket.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                String request = new String(packet.getData(), 0, packet.getLength(), CHARSET);
+                if (request.startsWith("M-SEARCH") && request.contains("wifi_bulb")) {
+                    for (SimulatedDevice device : devices) {
+                        send("HTTP/1.1 200 OK\r\n", device, packet.getSocketAddress());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("SSDP error: " + e);
+            }
+        }
+    }
+
+    private void advertise() {
+        SocketAddress group = new InetSocketAddress(MCAST_ADDR, MCAST_PORT);
+        while (!socket.isClosed()) {
+            for (SimulatedDevice device : devices) {
+                send("NOTIFY * HTTP/1.1\r\nHost: " + MCAST_ADDR + ":" + MCAST_PORT + "\r\nNTS: ssdp:alive\r\n", device, group);
+            }
+            try {
+                Thread.sleep(notifyInterval);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void send(String startLines, SimulatedDevice device, SocketAddress target) {
+        String message = startLines
+                + "Cache-Control: max-age=3600\r\n"
+                + "Location: yeelight://" + device.getLocation() + "\r\n"
+                + "Server: POSIX UPnP/1.0 YGLC/1\r\n"
+                + device.getAdvertisedState();
+        byte[] data = message.getBytes(CHARSET);
+        try {
+            socket.send(new DatagramPacket(data, data.length, target));
+        } catch (IOException e) {
+            System.err.println("SSDP error: " + e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.simulator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulates any number of Yeelight devices on the local machine. Every device
+ * listens on its own TCP port and the devices answer SSDP searches, so the
+ * binding can be load tested without any hardware.
+ * <p>
+ * Options are given as --name=value, see {@link #usage()}.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+public class YeelightSimulator {
+
+    //first device port, the devices use consecutive ports
+    int port = 55443;
+    int devices = 10;
+    String host = "127.0.0.1";
+    //response delay and its random addition in milliseconds
+    int latency = 0;
+    int jitter = 0;
+    //probability a response is dropped
+    double loss = 0;
+    //commands per minute a device accepts, 0 for no limit
+    int rate = 60;
+    boolean ssdp = true;
+    //interval of NOTIFY advertisements in milliseconds, 0 for none
+    long notifyInterval = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        YeelightSimulator simulator = new YeelightSimulator();
+        for (String arg : args) {
+            if (!simulator.parseOption(arg)) {
+                usage();
+                System.exit(1);
+            }
+        }
+        simulator.run();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -jar yeelight-simulator.jar [options]\n"
+                + "  --devices=10        number of simulated devices\n"
+                + "  --host=127.0.0.1    address the devices listen on\n"
+                + "  --port=55443        port of the first device, the others use the following ports\n"
+                + "  --latency=0         response delay in milliseconds\n"
+                + "  --jitter=0          random response delay added to the latency in milliseconds\n"
+                + "  --loss=0            probability a response is dropped (0..1)\n"
+                + "  --rate=60           commands per minute a device accepts, 0 for no limit\n"
+                + "  --ssdp=true         answer SSDP searches\n"
+                + "  --notify=0          interval of NOTIFY advertisements in milliseconds, 0 for none");
+    }
+
+    boolean parseOption(String arg) {
+        int pos = arg.indexOf('=');
+        if (!arg.startsWith("--") || pos < 0) {
+            return false;
+        }
+        String name = arg.substring(2, pos);
+        String value = arg.substring(pos + 1);
+        try {
+            switch (name) {
+                case "devices":
+                    devices = Integer.parseInt(value);
+                    break;
+                case "host":
+                    host = value;
+                    break;
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "latency":
+                    latency = Integer.parseInt(value);
+                    break;
+                case "jitter":
+                    jitter = Integer.parseInt(value);
+                    break;
+                case "loss":
+                    loss = Double.parseDouble(value);
+                    break;
+                case "rate":
+                    rate = Integer.parseInt(value);
+                    break;
+                case "ssdp":
+                    ssdp = Boolean.parseBoolean(value);
+                    break;
+                case "notify":
+                    notifyInterval = Long.parseLong(value);
+                    break;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+
+    void run() throws IOException, InterruptedException {
+        InetAddress address = InetAddress.getByName(host);
+        List<SimulatedDevice> started = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            SimulatedDevice device = new SimulatedDevice(String.format("0x%016x", 0x5100000L + i), address, port + i, this);
+            device.start();
+            started.add(device);
+        }
+        System.out.println("Simulating " + devices + " Yeelight devices on " + host + ":" + port + "-" + (port + devices - 1));
+
+        if (ssdp) {
+            SsdpResponder responder = new SsdpResponder(address, started, notifyInterval);
+            responder.start();
+            System.out.println("Answering SSDP searches on " + host);
+        }
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight;
+
+/**
+ * The actions an item can be bound to (the part after '#' of the binding configuration).
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+public enum YeelightAction {
+    SET_POWER("set_power"),
+    TOGGLE("toggle"),
+    NIGHTLIGHT("nightlight"),
+    SET_BRIGHT("set_bright"),
+    SET_CT("set_ct"),
+    SET_HSB("set_hsb"),
+    SET_RGB("set_rgb"),
+    MUSIC("music"),
+    FLOW("flow");
+
+    private final String name;
+
+    YeelightAction(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the action with the given name or null if there is no such action
+     */
+    public static YeelightAction fromName(String name) {
+        for (YeelightAction action : values()) {
+            if (action.name.equals(name)) {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
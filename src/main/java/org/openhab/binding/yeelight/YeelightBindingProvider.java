@@ -8,10 +8,13 @@
  */
 package org.openhab.binding.yeelight;
 
-import org.openhab.binding.yeelight.internal.YeelightGenericBindingProvider;
 import org.openhab.core.binding.BindingConfig;
 import org.openhab.core.binding.BindingProvider;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * @author Ondrej Pecta
  * @since 1.9.0
@@ -20,4 +23,14 @@ public interface YeelightBindingProvider extends BindingProvider {
 
     BindingConfig getItemConfig(String itemName);
 
+    /**
+     * @return all locations (ip:port) bound by this provider
+     */
+    Collection<String> getLocations();
+
+    /**
+     * @return the names of the items bound to the given location grouped by their action
+     */
+    Map<YeelightAction, Set<String>> getItemNamesByAction(String location);
+
 }
@@ -8,11 +8,11 @@
  */
 package org.openhab.binding.yeelight.internal;
 
-import com.google.gson.Gson;
 import org.apache.commons.lang.StringUtils;
+import org.openhab.binding.yeelight.YeelightAction;
 import org.openhab.binding.yeelight.YeelightBindingProvider;
-import org.openhab.binding.yeelight.model.YeelightGetPropsResponse;
 import org.openhab.core.binding.AbstractActiveBinding;
+import org.openhab.core.binding.BindingProvider;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.core.library.types.DecimalType;
@@ -25,15 +25,28 @@ import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.awt.*;
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -43,42 +56,127 @@ import java.util.Map;
  * @author Ondrej Pecta
  * @since 1.9.0
  */
-public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvider> {
+public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvider> implements YeelightNotificationListener {
 
     private static final Logger logger =
             LoggerFactory.getLogger(YeelightBinding.class);
-    private static final String MCAST_ADDR = "239.255.255.250";
-    private static final int MCAST_PORT = 1982;
-    private final int BUFFER_LENGTH = 1024;
-    private long msgid = 0;
+    private static final int COMMAND_THREADS = 4;
+    private static final long DISCOVERY_WAIT = 500;
+
+    private static final long DEFAULT_REFRESH = 60000;
+    private static final long DEFAULT_CONSISTENCY_REFRESH = 600000;
+    private static final int DEFAULT_POLL_THREADS = 8;
+    private static final long DEFAULT_POLL_TIMEOUT = 10000;
 
     //Constants
     private final String RESULT = "result";
     private final String TOGGLE = "toggle";
-    private final String NIGHTLIGHT = "nightlight";
     private final String SMOOTH = "smooth";
     private final String GET_PROP = "get_prop";
     private final String SET_BRIGHT = "set_bright";
     private final String SET_SCENE = "set_scene";
     private final String SET_POWER = "set_power";
-    private final String SET_CT = "set_ct";
-    private final String SET_HSB = "set_hsb";
+    private final String SET_CT_ABX = "set_ct_abx";
     private final String SET_RGB = "set_rgb";
+    private final String SET_HSV = "set_hsv";
+    private final String SCENE_COLOR = "color";
+    private final String SCENE_HSV = "hsv";
+    private final String SET_MUSIC = "set_music";
+    private final String START_CF = "start_cf";
+    private final String STOP_CF = "stop_cf";
+
+    //coalescing keys of the commands
+    private static final String POWER_KEY = "power";
+    private static final String BRIGHT_KEY = "bright";
+    private static final String CT_KEY = "ct";
+    private static final String COLOR_KEY = "color";
+    private static final String MUSIC_KEY = "music";
+    private static final String FLOW_KEY = "flow";
+
+    //delay before a lost music connection is requested again
+    private static final long MUSIC_RETRY_DELAY = 10000;
+
+    //get_prop parameters of every requested property mask
+    private static final Map<Integer, Object[]> PROPERTY_NAMES = new ConcurrentHashMap<>();
+
+    //poll cycle executor
+    private ThreadPoolExecutor pollExecutor;
+
+    //next poll time of every location
+    private final YeelightPollScheduler pollScheduler = new YeelightPollScheduler();
+    private long lastDiscoveryTime = 0;
+
+    //held by a poll cycle, a new configuration waits for the running cycle
+    private final Object cycleLock = new Object();
+
+    //command sending
+    private ScheduledExecutorService commandScheduler;
+    private ExecutorService connector;
+    private YeelightCommandDispatcher commandDispatcher;
+
+    //SSDP discovery
+    private final YeelightDiscoveryService discoveryService = new YeelightDiscoveryService(new YeelightDiscoveryService.Listener() {
+        public void advertisementReceived(YeelightSsdpMessage message) {
+            processAdvertisement(message);
+        }
+    });
+
+    //devices found by the discovery
+    private final YeelightDeviceRegistry deviceRegistry = new YeelightDeviceRegistry(new YeelightDeviceRegistry.Listener() {
+        public void deviceAdded(YeelightDevice device) {
+            logger.info("Found Yeelight device :\n{}", device.toString());
+            connectionManager.deviceSeen(device.getId());
+        }
+
+        public void deviceMoved(YeelightDevice device) {
+            logger.info("Yeelight device {} moved to {}", device.getId(), device.getLocation());
+            //reconnect to the new address
+            connectionManager.close(device.getId());
+        }
+
+        public void deviceRemoved(YeelightDevice device) {
+            logger.info("Yeelight device {} is no longer advertised", device.getId());
+        }
+    });
+
+    //JMX metrics
+    private final YeelightMetrics metrics = new YeelightMetrics(deviceRegistry);
+
+    //persistent device connections
+    private final YeelightConnectionManager connectionManager = new YeelightConnectionManager(this, new YeelightConnectionManager.AddressResolver() {
+        public InetSocketAddress resolve(String location) {
+            return resolveAddress(location);
+        }
+    }, metrics);
 
-    //thread
-    private Thread thread;
+    //item -> provider of its binding
+    private final ConcurrentMap<String, YeelightBindingProvider> itemProviders = new ConcurrentHashMap<>();
 
-    //Socket
-    private MulticastSocket socket = null;
+    //last known properties and poll time of every location
+    private final ConcurrentMap<String, YeelightProps> locationProps = new ConcurrentHashMap<>();
+    private final Map<String, Long> locationPollTimes = new ConcurrentHashMap<>();
 
-    //Gson
-    private Gson gson = new Gson();
+    //time of the last SSDP advertisement carrying the state of a location
+    private final Map<String, Long> locationAdvertisementTimes = new ConcurrentHashMap<>();
 
-    //devices
-    Hashtable<String, YeelightDevice> devices;
+    //music mode connections and the locations which should be in music mode
+    private final YeelightMusicServer musicServer = new YeelightMusicServer(new YeelightMusicServer.Listener() {
+        public void musicModeClosed(String location) {
+            logger.info("Location {} left music mode", location);
+            scheduleMusicMode(location, MUSIC_RETRY_DELAY);
+        }
+    });
+    private final Set<String> musicLocations = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    //group location -> member locations
+    private final Map<String, List<String>> groups = new ConcurrentHashMap<>();
+    //ip:port member location -> address, members need not be bound by any item
+    private final Map<String, InetSocketAddress> memberAddresses = new ConcurrentHashMap<>();
+
+    //flow name -> compiled flow and location -> name of the flow started last
+    private final Map<String, YeelightFlow> flows = new ConcurrentHashMap<>();
+    private final Map<String, String> locationFlows = new ConcurrentHashMap<>();
 
-    byte[] buffer = new byte[BUFFER_LENGTH];
-    DatagramPacket dgram = new DatagramPacket(buffer, buffer.length);
 
 
     /**
@@ -92,10 +190,52 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
 
 
     /**
-     * the refresh interval which is used to poll values from the Yeelight
-     * server (optional, defaults to 60000ms)
+     * the refresh interval which is used to discover devices and to poll values
+     * from the Yeelight server (optional, defaults to 60000ms)
+     */
+    private volatile long refreshInterval = DEFAULT_REFRESH;
+
+    /**
+     * the poll interval of a location right after a command or a change
+     * (optional, defaults to 5000ms) and of a stable or offline location
+     * (optional, defaults to 300000ms)
      */
-    private long refreshInterval = 60000;
+    private volatile long minRefreshInterval = YeelightPollScheduler.DEFAULT_MIN_REFRESH;
+    private volatile long maxRefreshInterval = YeelightPollScheduler.DEFAULT_MAX_REFRESH;
+
+    /**
+     * listen to property change notifications pushed by the devices over
+     * the open control connections (optional, defaults to true)
+     */
+    private volatile boolean listen = true;
+
+    /**
+     * the interval in which devices with a listening connection are still
+     * polled as a consistency check (optional, defaults to 600000ms)
+     */
+    private volatile long consistencyRefreshInterval = DEFAULT_CONSISTENCY_REFRESH;
+
+    /**
+     * the number of locations polled in parallel (optional, defaults to 8)
+     */
+    private volatile int pollThreads = DEFAULT_POLL_THREADS;
+
+    /**
+     * the deadline of a whole poll cycle (optional, defaults to 10000ms)
+     */
+    private volatile long pollTimeout = DEFAULT_POLL_TIMEOUT;
+
+    /**
+     * the number of commands per minute sent to a device (optional, defaults to 60)
+     * and the number of commands which may be sent at once (optional, defaults to 5)
+     */
+    private volatile int commandRate = YeelightCommandDispatcher.DEFAULT_RATE;
+    private volatile int commandBurst = YeelightCommandDispatcher.DEFAULT_BURST;
+
+    /**
+     * the port devices in music mode connect to (optional, defaults to any free port)
+     */
+    private volatile int musicPort = 0;
 
 
     public void setItemRegistry(ItemRegistry itemRegistry) {
@@ -122,113 +262,235 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
 
         // the configuration is guaranteed not to be null, because the component definition has the
         // configuration-policy set to require. If set to 'optional' then the configuration may be null
+        applyConfiguration(configuration);
+
+        pollExecutor = new ThreadPoolExecutor(pollThreads, pollThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Yeelight poller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
+        commandScheduler = Executors.newScheduledThreadPool(COMMAND_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Yeelight command sender");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        //connecting blocks, one thread per connecting location keeps unreachable devices apart
+        connector = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Yeelight connector");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        commandDispatcher = new YeelightCommandDispatcher(commandScheduler, connector, new YeelightCommandDispatcher.Sender() {
+            public YeelightResponseFuture send(YeelightCommand command) {
+                return sendYeelightCommandAsync(command.getLocation(), command.getMethod(), command.getParams());
+            }
 
-        // to override the default refresh interval one has to add a
-        // parameter to openhab.cfg like <bindingName>:refresh=<intervalInMs>
-        String refreshIntervalString = (String) configuration.get("refresh");
-        if (StringUtils.isNotBlank(refreshIntervalString)) {
-            refreshInterval = Long.parseLong(refreshIntervalString);
+            public boolean isConnected(String location) {
+                return connectionManager.isConnected(location);
+            }
+        });
+        commandDispatcher.setRate(commandRate, commandBurst);
+
+        discoveryService.start();
+        metrics.register();
+        setProperlyConfigured(true);
+    }
+
+    private void processAdvertisement(YeelightSsdpMessage message) {
+        metrics.advertisementReceived();
+        String location = message.getLocation();
+        if (location != null) {
+            deviceSeen(location);
+            if (isBoundOrGroupMember(location))
+                processAdvertisedState(location, message);
         }
 
-        devices = new Hashtable<>();
-        setupSocket();
-        setProperlyConfigured(socket != null);
+        deviceRegistry.update(message);
+        String id = message.getString(YeelightSsdpMessage.ID);
+        if (!id.equals("") && isBoundOrGroupMember(id)) {
+            deviceSeen(id);
+            processAdvertisedState(id, message);
+        }
     }
 
-    private void setupSocket() {
-        try {
-            socket = new MulticastSocket(); // must bind receive side
-            socket.joinGroup(InetAddress.getByName(MCAST_ADDR));
-        } catch (IOException e) {
-            logger.error(e.toString());
+    private void deviceSeen(String location) {
+        boolean offline = connectionManager.getHealthState(location) == YeelightLocationHealth.State.OFFLINE;
+        connectionManager.deviceSeen(location);
+        if (offline) {
+            //confirm the location soon instead of at its backed off poll time
+            pollScheduler.activity(location);
         }
+    }
 
-        thread = new Thread(new Runnable() {
-            public void run() {
-                receiveData(socket, dgram);
+    private void processAdvertisedState(String location, YeelightSsdpMessage message) {
+        if (!message.has(YeelightSsdpMessage.POWER))
+            return;
+
+        YeelightProps props = new YeelightProps();
+        props.set(YeelightProps.POWER, message.equals(YeelightSsdpMessage.POWER, "on") ? 1 : 0);
+        setAdvertisedProperty(props, YeelightProps.BRIGHT, message, YeelightSsdpMessage.BRIGHT);
+        setAdvertisedProperty(props, YeelightProps.CT, message, YeelightSsdpMessage.CT);
+        setAdvertisedProperty(props, YeelightProps.HUE, message, YeelightSsdpMessage.HUE);
+        setAdvertisedProperty(props, YeelightProps.SAT, message, YeelightSsdpMessage.SAT);
+        setAdvertisedProperty(props, YeelightProps.RGB, message, YeelightSsdpMessage.RGB);
+
+        locationAdvertisementTimes.put(location, System.currentTimeMillis());
+        mergeProps(location, props, 0);
+    }
+
+    /**
+     * Merges the update into the cached properties of the location, after forgetting
+     * the properties of the mask, and publishes what changed. The poll tasks, the
+     * notification readers and the commands update the cache concurrently, so it is
+     * replaced only if no other update came in between, otherwise the merge is repeated.
+     */
+    private void mergeProps(String location, YeelightProps update, int forget) {
+        while (true) {
+            YeelightProps cached = locationProps.get(location);
+            YeelightProps merged = cached != null ? cached.copy() : new YeelightProps();
+            merged.forget(forget);
+            merged.merge(update);
+            boolean replaced = cached != null
+                    ? locationProps.replace(location, cached, merged)
+                    : locationProps.putIfAbsent(location, merged) == null;
+            if (replaced) {
+                processLocationResult(location, merged, merged.diff(cached));
+                return;
             }
-        });
-        thread.start();
+        }
     }
 
-    private void receiveData(MulticastSocket socket, DatagramPacket dgram) {
+    private void setAdvertisedProperty(YeelightProps props, int property, YeelightSsdpMessage message, int header) {
+        int value = message.getInt(header);
+        if (value >= 0)
+            props.set(property, value);
+    }
 
-        try {
-            while (true) {
-                socket.receive(dgram);
-                String sentence = new String(dgram.getData(), 0,
-                        dgram.getLength());
-
-                logger.debug("Yeelight received packet: {}", sentence);
-
-                if (isOKPacket(sentence) || isNotifyPacket(sentence)) {
-                    String[] lines = sentence.split("\n");
-                    String id = "";
-                    String location = "";
-                    String model = "";
-                    String support = "";
-                    for (String line : lines) {
-                        line = line.replace("\r", "");
-                        line = line.replace("\n", "");
-
-                        if (line.startsWith("id: "))
-                            id = line.substring(4);
-                        else if (line.startsWith("Location: "))
-                            location = line.substring(10);
-                        else if (line.startsWith("model: "))
-                            model = line.substring(7);
-                        else if (line.startsWith("support: "))
-                            support = line.substring(9);
-                    }
-                    if (!id.equals("") && !devices.containsKey(id)) {
-                        YeelightDevice device = new YeelightDevice(id, location, model, support);
-                        devices.put(id, device);
-                        logger.info("Found Yeelight device :\n{}", device.toString());
-                    }
+    /**
+     * Called by the SCR when the configuration of a binding has been changed through the ConfigAdmin service.
+     *
+     * @param configuration Updated configuration properties
+     */
+    public void modified(final Map<String, Object> configuration) {
+        // connections, discovery, the device registry and the cached states are kept,
+        // only the settings are swapped so that no rediscovery or re-polling burst follows
+        synchronized (cycleLock) {
+            long tick = getRefreshInterval();
+            applyConfiguration(configuration);
+
+            if (pollExecutor != null && pollExecutor.getCorePoolSize() != pollThreads) {
+                // the maximum may never drop below the core size
+                if (pollThreads > pollExecutor.getMaximumPoolSize()) {
+                    pollExecutor.setMaximumPoolSize(pollThreads);
+                    pollExecutor.setCorePoolSize(pollThreads);
+                } else {
+                    pollExecutor.setCorePoolSize(pollThreads);
+                    pollExecutor.setMaximumPoolSize(pollThreads);
                 }
             }
-        } catch (IOException e) {
-            logger.error(e.toString());
+            if (commandDispatcher != null)
+                commandDispatcher.setRate(commandRate, commandBurst);
+
+            if (tick != getRefreshInterval()) {
+                // the refresh thread sleeps the interval it was started with
+                logger.debug("Refresh interval changed to {}ms, restarting the refresh thread", getRefreshInterval());
+                setProperlyConfigured(false);
+                setProperlyConfigured(true);
+            }
         }
     }
 
-    private boolean isNotifyPacket(String sentence) {
-        return sentence.startsWith("NOTIFY * HTTP/1.1");
-    }
+    /**
+     * Reads the settings, a setting which is missing reverts to its default.
+     */
+    private void applyConfiguration(final Map<String, Object> configuration) {
+        // to override the default refresh interval one has to add a
+        // parameter to openhab.cfg like <bindingName>:refresh=<intervalInMs>
+        refreshInterval = getLong(configuration, "refresh", DEFAULT_REFRESH);
 
-    private boolean isOKPacket(String sentence) {
-        return sentence.startsWith("HTTP/1.1 200 OK");
-    }
+        minRefreshInterval = getLong(configuration, "minRefresh", YeelightPollScheduler.DEFAULT_MIN_REFRESH);
+        maxRefreshInterval = getLong(configuration, "maxRefresh", YeelightPollScheduler.DEFAULT_MAX_REFRESH);
+        pollScheduler.setIntervals(minRefreshInterval, maxRefreshInterval);
 
-    private void discoverYeelightDevices() {
-        String url = null;
+        String listenString = (String) configuration.get("listen");
+        listen = StringUtils.isBlank(listenString) || Boolean.parseBoolean(listenString);
 
-        try {
-            StringBuilder sb = new StringBuilder();
-            sb.append("M-SEARCH * HTTP/1.1\r\n");
-            sb.append("MAN: \"ssdp:discover\"\r\n");
-            sb.append("ST: wifi_bulb\r\n");
+        consistencyRefreshInterval = getLong(configuration, "consistencyRefresh", DEFAULT_CONSISTENCY_REFRESH);
+        pollThreads = getInt(configuration, "pollThreads", DEFAULT_POLL_THREADS);
+        pollTimeout = getLong(configuration, "pollTimeout", DEFAULT_POLL_TIMEOUT);
+
+        connectionManager.setTimeouts(
+                getInt(configuration, "connectTimeout", YeelightConnectionManager.DEFAULT_CONNECT_TIMEOUT),
+                getInt(configuration, "readTimeout", YeelightConnectionManager.DEFAULT_READ_TIMEOUT));
 
-            byte[] sendData = sb.toString().getBytes("UTF-8");
-            InetAddress addr = InetAddress.getByName(MCAST_ADDR);
-            DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, addr, MCAST_PORT);
+        commandRate = getInt(configuration, "commandRate", YeelightCommandDispatcher.DEFAULT_RATE);
+        commandBurst = getInt(configuration, "commandBurst", YeelightCommandDispatcher.DEFAULT_BURST);
 
-            socket.send(sendPacket);
-        } catch (MalformedURLException e) {
-            logger.error("The URL '{}' is malformed: ", url, e);
-        } catch (Exception e) {
-            logger.error("Cannot get Yeelight login cookie: ", e);
+        // a running music server keeps its port, a new one only applies when it is started again
+        musicPort = getInt(configuration, "musicPort", 0);
+
+        // groups are configured like <bindingName>:group.<name>=<location>,<location>,...
+        Map<String, List<String>> configured = new HashMap<>();
+        Map<String, InetSocketAddress> addresses = new HashMap<>();
+        for (Map.Entry<String, Object> entry : configuration.entrySet()) {
+            if (entry.getKey().startsWith("group.") && entry.getValue() instanceof String) {
+                List<String> members = new ArrayList<>();
+                for (String member : StringUtils.split((String) entry.getValue(), ',')) {
+                    if (StringUtils.isBlank(member))
+                        continue;
+                    member = member.trim();
+                    if (!YeelightBindingConfig.isDeviceId(member)) {
+                        try {
+                            addresses.put(member, YeelightBindingConfig.parseAddress(member));
+                        } catch (IllegalArgumentException e) {
+                            logger.warn("Yeelight {} has {}", entry.getKey(), e.getMessage());
+                            continue;
+                        }
+                    }
+                    members.add(member);
+                }
+                configured.put(YeelightBindingConfig.GROUP_PREFIX + entry.getKey().substring("group.".length()), members);
+            }
+        }
+        memberAddresses.putAll(addresses);
+        memberAddresses.keySet().retainAll(addresses.keySet());
+        groups.putAll(configured);
+        groups.keySet().retainAll(configured.keySet());
+
+        // flows are configured like <bindingName>:flow.<name>=<entry>;<entry>;... and replace the presets
+        Map<String, String> definitions = new HashMap<>(YeelightFlow.PRESETS);
+        for (Map.Entry<String, Object> entry : configuration.entrySet()) {
+            if (entry.getKey().startsWith("flow.") && entry.getValue() instanceof String)
+                definitions.put(entry.getKey().substring("flow.".length()), (String) entry.getValue());
         }
+        Map<String, YeelightFlow> compiled = new HashMap<>();
+        for (Map.Entry<String, String> definition : definitions.entrySet()) {
+            try {
+                compiled.put(definition.getKey(), YeelightFlow.compile(definition.getKey(), definition.getValue()));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Invalid Yeelight flow {}: {}", definition.getKey(), e.getMessage());
+            }
+        }
+        flows.putAll(compiled);
+        flows.keySet().retainAll(compiled.keySet());
     }
 
-    /**
-     * Called by the SCR when the configuration of a binding has been changed through the ConfigAdmin service.
-     *
-     * @param configuration Updated configuration properties
-     */
-    public void modified(final Map<String, Object> configuration) {
-        // update the internal configuration accordingly
+    private long getLong(Map<String, Object> configuration, String key, long defaultValue) {
+        String value = (String) configuration.get(key);
+        return StringUtils.isNotBlank(value) ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    private int getInt(Map<String, Object> configuration, String key, int defaultValue) {
+        String value = (String) configuration.get(key);
+        return StringUtils.isNotBlank(value) ? Integer.parseInt(value.trim()) : defaultValue;
     }
 
     /**
@@ -248,11 +510,25 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
      */
     public void deactivate(final int reason) {
         this.bundleContext = null;
-        if (thread != null && thread.isAlive())
-            thread.interrupt();
-        if (this.socket != null)
-            socket.close();
-        devices.clear();
+        discoveryService.stop();
+        metrics.unregister();
+        musicServer.stop();
+        musicLocations.clear();
+        if (pollExecutor != null)
+            pollExecutor.shutdownNow();
+        if (commandScheduler != null)
+            commandScheduler.shutdownNow();
+        if (connector != null)
+            connector.shutdownNow();
+        if (commandDispatcher != null)
+            commandDispatcher.clear();
+        connectionManager.closeAll();
+        locationProps.clear();
+        locationPollTimes.clear();
+        pollScheduler.clear();
+        locationAdvertisementTimes.clear();
+        locationFlows.clear();
+        deviceRegistry.clear();
     }
 
 
@@ -261,7 +537,8 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
      */
     @Override
     protected long getRefreshInterval() {
-        return refreshInterval;
+        //ticks at the poll floor, the scheduler decides which locations are due
+        return Math.min(refreshInterval, minRefreshInterval);
     }
 
     /**
@@ -280,91 +557,358 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
         // the frequently executed code (polling) goes here ...
         logger.debug("execute() method is called!");
 
+        synchronized (cycleLock) {
+            poll();
+        }
+    }
+
+    private void poll() {
         if (!bindingsExist()) {
             return;
         }
 
-        Hashtable<String, YeelightGetPropsResponse> propList = new Hashtable<>();
-
-        //devices.clear();
-        discoverYeelightDevices();
+        if (System.currentTimeMillis() - lastDiscoveryTime >= refreshInterval) {
+            //the responses carry the device state, so give them a chance to arrive before polling
+            lastDiscoveryTime = System.currentTimeMillis();
+            discoveryService.discover();
+            try {
+                Thread.sleep(DISCOVERY_WAIT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            deviceRegistry.evictExpired();
+        }
 
+        //the members of a group are polled for the properties of the group items
+        Map<String, Integer> masks = new HashMap<>();
         for (final YeelightBindingProvider provider : providers) {
-            for (String itemName : provider.getItemNames()) {
+            for (String location : provider.getLocations()) {
+                int mask = getPolledMask(location);
+                for (String member : getMembers(location)) {
+                    Integer memberMask = masks.get(member);
+                    masks.put(member, memberMask != null ? memberMask | mask : mask);
+                }
+            }
+        }
+        metrics.updateRates(System.currentTimeMillis());
+        pollScheduler.retain(masks.keySet());
+
+        long now = System.currentTimeMillis();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : masks.entrySet()) {
+            String location = entry.getKey();
+            int mask = entry.getValue();
+            if (mask != 0 && isPollRequired(location, mask, now))
+                tasks.add(createPollTask(location, mask));
+        }
+        if (tasks.isEmpty())
+            return;
 
-                YeelightBindingConfig config = (YeelightBindingConfig) provider.getItemConfig(itemName);
-                if (config == null)
-                    continue;
+        long start = System.currentTimeMillis();
+        int timedOut = 0;
+        try {
+            for (Future<Void> future : pollExecutor.invokeAll(tasks, pollTimeout, TimeUnit.MILLISECONDS)) {
+                if (future.isCancelled())
+                    timedOut++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long duration = System.currentTimeMillis() - start;
+        metrics.pollCycleCompleted(duration, timedOut);
+        logger.debug("Polled {} locations in {}ms, {} timed out", tasks.size(), duration, timedOut);
+    }
 
-                String action = config.getAction();
-                if (action.equals(TOGGLE))
-                    continue;
+    private Callable<Void> createPollTask(final String location, final int mask) {
+        return new Callable<Void>() {
+            public Void call() {
+                //queued behind the commands of the location
+                YeelightResponseFuture future = commandDispatcher.submit(new YeelightCommand(location, GET_PROP, GET_PROP,
+                        getPropertyNames(mask), YeelightCommand.Priority.POLL));
+                String response;
+                try {
+                    response = future.get();
+                } catch (InterruptedException e) {
+                    //the poll cycle timed out
+                    future.cancel(false);
+                    return null;
+                } catch (CancellationException e) {
+                    //dropped for a command, which schedules a poll of its own
+                    return null;
+                } catch (ExecutionException e) {
+                    //logged by the sender
+                    response = null;
+                }
+                YeelightProps result = decodeGetPropResponse(location, mask, response);
+                if (result == null) {
+                    pollScheduler.failed(location);
+                    return null;
+                }
+                int changed = result.diff(locationProps.put(location, result));
+                pollScheduler.polled(location, changed != 0);
+                processLocationResult(location, result, changed);
+                return null;
+            }
+        };
+    }
 
-                String location = config.getLocation();
-                YeelightGetPropsResponse result;
+    /**
+     * Publishes the items whose properties are in the changed mask.
+     */
+    private void processLocationResult(String location, YeelightProps result, int changed) {
+        if (changed == 0)
+            return;
+        for (final YeelightBindingProvider provider : providers) {
+            for (Map.Entry<YeelightAction, Set<String>> entry : provider.getItemNamesByAction(location).entrySet()) {
+                if ((getPropertyMask(entry.getKey()) & changed) == 0)
+                    continue;
+                for (String itemName : entry.getValue()) {
+                    processYeelightResult(result, entry.getKey(), itemName);
+                }
+            }
+        }
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            if (group.getValue().contains(location) && isBound(group.getKey()))
+                processGroupResult(group.getKey(), group.getValue());
+        }
+    }
 
-                if (!propList.containsKey(location)) {
-                    result = sendYeelightGetPropCommand(location);
-                    if (result == null)
-                        continue;
-                    propList.put(location, result);
-                    logger.debug("Cached location: {}", location);
-                } else {
-                    result = propList.get(location);
+    /**
+     * Publishes the aggregated state of a group: it is on or flowing if any member is, brightness
+     * and color temperature are the averages of the members, the color is the one of the
+     * first member which reports it.
+     */
+    private void processGroupResult(String group, List<String> members) {
+        YeelightProps aggregated = new YeelightProps();
+        int[] sums = new int[YeelightProps.NAMES.length];
+        int[] counts = new int[YeelightProps.NAMES.length];
+        for (String member : members) {
+            YeelightProps props = locationProps.get(member);
+            if (props == null)
+                continue;
+            for (int property = 0; property < YeelightProps.NAMES.length; property++) {
+                if (props.isKnown(property)) {
+                    sums[property] += props.get(property);
+                    counts[property]++;
+                    if (!aggregated.isKnown(property))
+                        aggregated.set(property, props.get(property));
                 }
+            }
+        }
+        for (int property : new int[]{YeelightProps.POWER, YeelightProps.FLOWING}) {
+            if (counts[property] > 0)
+                aggregated.set(property, sums[property] > 0 ? 1 : 0);
+        }
+        for (int property : new int[]{YeelightProps.BRIGHT, YeelightProps.CT, YeelightProps.NL_BR}) {
+            if (counts[property] > 0)
+                aggregated.set(property, sums[property] / counts[property]);
+        }
+
+        YeelightProps previous = locationProps.put(group, aggregated);
+        processLocationResult(group, aggregated, aggregated.diff(previous));
+    }
 
-                processYeelightResult(result, action, itemName);
+    /**
+     * @return the member locations of a group, the location itself otherwise
+     */
+    private List<String> getMembers(String location) {
+        if (YeelightBindingConfig.isGroup(location)) {
+            List<String> members = groups.get(location);
+            if (members == null) {
+                logger.warn("Yeelight group {} is not configured", location);
+                return Collections.emptyList();
             }
+            return members;
         }
+        return Collections.singletonList(location);
     }
 
-    private void processYeelightResult(YeelightGetPropsResponse result, String action, String itemName) {
-        State newState = null;
-        State oldState = null;
-        try {
-            switch (action) {
-                case SET_POWER:
-                    String power = result.getResult().get(0);
-                    newState = power.equals("on") ? OnOffType.ON : OnOffType.OFF;
-                    break;
-                case SET_BRIGHT:
-                    int bright = result.getResult().get(1).isEmpty() ? 0 : Integer.parseInt(result.getResult().get(1));
-                    newState = new PercentType(bright == 1 ? 0 : bright);
-                    break;
-                case SET_CT:
-                    int ct = result.getResult().get(2).isEmpty() ? 0 : Integer.parseInt(result.getResult().get(2));
-                    ;
-                    newState = new PercentType((ct - 1700) / 48);
-                    break;
-                case SET_HSB:
-                    int hue = result.getResult().get(3).isEmpty() ? 0 : Integer.parseInt(result.getResult().get(3));
-                    int sat = result.getResult().get(4).isEmpty() ? 0 : Integer.parseInt(result.getResult().get(4));
-                    int br = result.getResult().get(1).isEmpty() ? 0 : Integer.parseInt(result.getResult().get(1));
-                    newState = new HSBType(new DecimalType(hue), new PercentType(sat), new PercentType(br == 1 ? 0 : br));
-                    break;
-                case SET_RGB:
-                    int rgb = result.getResult().get(5).isEmpty() ? 0 : Integer.parseInt(result.getResult().get(5));
-                    Color col = getRGBColor(rgb);
-                    newState = new HSBType(col);
-                    break;
-                case NIGHTLIGHT:
-                    String status = result.getResult().get(6);
-                    newState = (status.equals("0") || status.equals("")) ? OnOffType.OFF : OnOffType.ON;
-                    break;
-                default:
-                    logger.error("Unknown Yeelight action: {}", action);
+    private boolean isPollRequired(String location, int mask, long now) {
+        boolean listening = listen && connectionManager.isConnected(location);
+        //a fresh advertisement only lengthens the idle interval, a command is still confirmed soon
+        if (!listening && pollScheduler.isConfirmationDue(location, now))
+            return true;
+        if (isAdvertisementFresh(location, mask))
+            return false;
+        if (!listening)
+            return pollScheduler.isDue(location, now);
+        Long lastPoll = locationPollTimes.get(location);
+        return lastPoll == null || now - lastPoll >= consistencyRefreshInterval;
+    }
+
+    /**
+     * A recent advertisement makes the poll redundant, unless the location has items
+     * of properties advertisements do not carry (e.g. nl_br).
+     */
+    private boolean isAdvertisementFresh(String location, int mask) {
+        if ((mask & ~YeelightProps.ADVERTISED) != 0)
+            return false;
+        Long lastAdvertisement = locationAdvertisementTimes.get(location);
+        return lastAdvertisement != null && System.currentTimeMillis() - lastAdvertisement < refreshInterval;
+    }
+
+    private boolean isBound(String location) {
+        for (final YeelightBindingProvider provider : providers) {
+            if (!provider.getItemNamesByAction(location).isEmpty())
+                return true;
+        }
+        return false;
+    }
 
+    private boolean isBoundOrGroupMember(String location) {
+        if (isBound(location))
+            return true;
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            if (group.getValue().contains(location) && isBound(group.getKey()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the mask of the properties displayed by the items of the location
+     */
+    private int getPolledMask(String location) {
+        int mask = 0;
+        for (final YeelightBindingProvider provider : providers) {
+            for (YeelightAction action : provider.getItemNamesByAction(location).keySet()) {
+                mask |= getPropertyMask(action);
+                //color commands depend on the power state, see isPoweredOn
+                if (action == YeelightAction.SET_HSB || action == YeelightAction.SET_RGB)
+                    mask |= 1 << YeelightProps.POWER;
             }
+        }
+        return mask;
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void notificationReceived(String location, String notification) {
+        if (!listen)
+            return;
 
-            oldState = itemRegistry.getItem(itemName).getState();
-        } catch (ItemNotFoundException e) {
-            logger.error(e.toString());
+        YeelightProps result = new YeelightProps();
+        if (!YeelightCodec.decodeNotification(notification, result)) {
+            logger.debug("Ignoring Yeelight notification: {}", notification);
+            return;
         }
-        if (oldState == null || !oldState.equals(newState)) {
-            eventPublisher.postUpdate(itemName, newState);
+        mergeProps(location, result, 0);
+    }
+
+    /**
+     * @return the mask of the properties an item with the action displays
+     */
+    private int getPropertyMask(YeelightAction action) {
+        switch (action) {
+            case SET_POWER:
+                return 1 << YeelightProps.POWER;
+            case SET_BRIGHT:
+                return 1 << YeelightProps.BRIGHT;
+            case SET_CT:
+                return 1 << YeelightProps.CT;
+            case SET_HSB:
+                return 1 << YeelightProps.HUE | 1 << YeelightProps.SAT | 1 << YeelightProps.BRIGHT;
+            case SET_RGB:
+                return 1 << YeelightProps.RGB;
+            case NIGHTLIGHT:
+                return 1 << YeelightProps.NL_BR;
+            case FLOW:
+                return 1 << YeelightProps.FLOWING;
+            default:
+                return 0;
         }
     }
 
+    /**
+     * Forgets the cached properties of the action, so the next result publishes
+     * them even if the device did not change, e.g. after a failed command.
+     * The properties of group members are forgotten as well, because a group is
+     * only published when one of its members changes.
+     */
+    private void invalidateProperties(String location, YeelightAction action) {
+        if (YeelightBindingConfig.isGroup(location)) {
+            List<String> members = groups.get(location);
+            if (members != null) {
+                for (String member : members) {
+                    invalidateProperties(member, action);
+                }
+            }
+        }
+        if (locationProps.containsKey(location))
+            mergeProps(location, new YeelightProps(), getPropertyMask(action));
+    }
+
+    private boolean isKnown(YeelightProps result, YeelightAction action) {
+        switch (action) {
+            case SET_POWER:
+                return result.isKnown(YeelightProps.POWER);
+            case SET_BRIGHT:
+                return result.isKnown(YeelightProps.BRIGHT);
+            case SET_CT:
+                return result.isKnown(YeelightProps.CT);
+            case SET_HSB:
+                return result.isKnown(YeelightProps.HUE) && result.isKnown(YeelightProps.SAT) && result.isKnown(YeelightProps.BRIGHT);
+            case SET_RGB:
+                return result.isKnown(YeelightProps.RGB);
+            case NIGHTLIGHT:
+                return result.isKnown(YeelightProps.NL_BR);
+            case FLOW:
+                return result.isKnown(YeelightProps.FLOWING);
+            default:
+                return false;
+        }
+    }
+
+    private void processYeelightResult(YeelightProps result, YeelightAction action, String itemName) {
+        if (!isKnown(result, action))
+            return;
+
+        State newState = null;
+        switch (action) {
+            case SET_POWER:
+                newState = result.get(YeelightProps.POWER) == 1 ? OnOffType.ON : OnOffType.OFF;
+                break;
+            case SET_BRIGHT:
+                int bright = result.get(YeelightProps.BRIGHT);
+                newState = new PercentType(bright == 1 ? 0 : bright);
+                break;
+            case SET_CT:
+                int ct = result.get(YeelightProps.CT);
+                newState = new PercentType((ct - 1700) / 48);
+                break;
+            case SET_HSB:
+                int hue = result.get(YeelightProps.HUE);
+                int sat = result.get(YeelightProps.SAT);
+                int br = result.get(YeelightProps.BRIGHT);
+                newState = new HSBType(new DecimalType(hue), new PercentType(sat), new PercentType(br == 1 ? 0 : br));
+                break;
+            case SET_RGB:
+                int rgb = result.get(YeelightProps.RGB);
+                newState = new HSBType(new DecimalType(YeelightColor.getHue(rgb)),
+                        new PercentType(YeelightColor.getSaturation(rgb)), new PercentType(YeelightColor.getBrightness(rgb)));
+                break;
+            case NIGHTLIGHT:
+                newState = result.get(YeelightProps.NL_BR) == 0 ? OnOffType.OFF : OnOffType.ON;
+                break;
+            case FLOW:
+                //the device does not tell which flow runs, it is the one started last through the binding
+                YeelightBindingConfig config = getItemConfig(itemName);
+                boolean running = result.get(YeelightProps.FLOWING) == 1 && config != null
+                        && config.getParameter().equals(locationFlows.get(config.getLocation()));
+                newState = running ? OnOffType.ON : OnOffType.OFF;
+                break;
+            default:
+                logger.error("Unknown Yeelight action: {}", action);
+
+        }
+
+        if (newState != null)
+            eventPublisher.postUpdate(itemName, newState);
+    }
+
     /**
      * @{inheritDoc}
      */
@@ -380,7 +924,7 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
             return;
 
         String location = config.getLocation();
-        String action = config.getAction();
+        YeelightAction action = config.getAction();
 
         switch (action) {
             case SET_POWER:
@@ -393,6 +937,20 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
                     sendYeelightNightModeCommand(location, command.equals(OnOffType.ON));
                 }
                 break;
+            case MUSIC:
+                if (command instanceof OnOffType) {
+                    setMusicMode(location, command.equals(OnOffType.ON));
+                }
+                break;
+            case FLOW:
+                if (command instanceof OnOffType) {
+                    if (command.equals(OnOffType.ON)) {
+                        sendYeelightStartFlowCommand(location, config.getParameter());
+                    } else {
+                        sendYeelightStopFlowCommand(location);
+                    }
+                }
+                break;
             case TOGGLE:
                 if (command instanceof OnOffType && command.equals(OnOffType.ON)) {
                     sendYeelightToggleCommand(location);
@@ -407,8 +965,7 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
             case SET_HSB:
                 if (command instanceof HSBType) {
                     HSBType hsb = (HSBType) command;
-                    sendYeelightHSCommand(location, hsb.getHue().intValue(), hsb.getSaturation().intValue());
-                    sendYeelightBrightCommand(location, hsb.getBrightness().intValue());
+                    sendYeelightHSBCommand(location, hsb.getHue().intValue(), hsb.getSaturation().intValue(), hsb.getBrightness().intValue());
                 } else if (command instanceof OnOffType) {
                     sendYeelightPowerCommand(location, command.toString().toLowerCase());
                 }
@@ -416,8 +973,8 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
             case SET_RGB:
                 if (command instanceof HSBType) {
                     HSBType hsb = (HSBType) command;
-                    sendYeelightRGBCommand(location, hsb.getRed().intValue(), hsb.getGreen().intValue(), hsb.getBlue().intValue());
-                    sendYeelightBrightCommand(location, hsb.getBrightness().intValue());
+                    int brightness = hsb.getBrightness().intValue();
+                    sendYeelightRGBCommand(location, YeelightColor.fromHSB(hsb.getHue().intValue(), hsb.getSaturation().intValue(), brightness), brightness);
                 } else if (command instanceof OnOffType) {
                     sendYeelightPowerCommand(location, command.toString().toLowerCase());
                 }
@@ -425,146 +982,336 @@ public class YeelightBinding extends AbstractActiveBinding<YeelightBindingProvid
             default:
                 logger.error("Unknown Yeelight command: {}", action);
         }
+        //the item state follows the command, publish the device state even if it stays the same
+        invalidateProperties(location, action);
 
     }
 
-    private YeelightGetPropsResponse sendYeelightGetPropCommand(String location) {
-        String result = sendYeelightCommand(location, GET_PROP, new Object[]{"power", "bright", "ct", "hue", "sat", "rgb", "nl_br"});
+    private YeelightProps decodeGetPropResponse(String location, int mask, String result) {
         logger.debug("location: {}, props: {}", location, result);
-        return gson.fromJson(result, YeelightGetPropsResponse.class);
+        if (result == null || YeelightCodec.decodeError(result) != null)
+            return null;
+        YeelightProps props = new YeelightProps();
+        if (!YeelightCodec.decodeProps(result, mask, props)) {
+            logger.debug("Unexpected get_prop response from location {}: {}", location, result);
+            return null;
+        }
+        locationPollTimes.put(location, System.currentTimeMillis());
+        return props;
+    }
+
+    private Object[] getPropertyNames(int mask) {
+        Object[] names = PROPERTY_NAMES.get(mask);
+        if (names == null) {
+            names = YeelightProps.getNames(mask);
+            PROPERTY_NAMES.put(mask, names);
+        }
+        return names;
     }
 
-    private String sendYeelightToggleCommand(String location) {
-        return sendYeelightCommand(location, TOGGLE, new Object[]{});
+    private void sendYeelightToggleCommand(String location) {
+        submitYeelightCommand(location, null, TOGGLE, new Object[]{});
     }
 
-    private String sendYeelightBrightCommand(String location, int param) {
-        return sendYeelightCommand(location, SET_BRIGHT, new Object[]{param == 0 ? 1 : param, SMOOTH, 500});
+    private void sendYeelightBrightCommand(String location, int param) {
+        submitYeelightCommand(location, BRIGHT_KEY, SET_BRIGHT, new Object[]{param == 0 ? 1 : param, SMOOTH, 500});
     }
 
-    private String sendYeelightNightModeCommand(String location, boolean mode) {
+    private void sendYeelightNightModeCommand(String location, boolean mode) {
         if (mode) {
-            //return sendYeelightCommand(location, SET_SCENE, new Object[]{NIGHTLIGHT, 1});
-            return sendYeelightPowerCommand(location, "on", 5);
+            //submitYeelightCommand(location, POWER_KEY, SET_SCENE, new Object[]{NIGHTLIGHT, 1});
+            sendYeelightPowerCommand(location, "on", 5);
         } else {
-            return sendYeelightPowerCommand(location, "on", 1);
+            sendYeelightPowerCommand(location, "on", 1);
         }
     }
 
-    private String sendYeelightRGBCommand(String location, int red, int green, int blue) {
-        return sendYeelightCommand(location, SET_RGB, new Object[]{getRGBValue(red, green, blue), SMOOTH, 500});
+    private void sendYeelightRGBCommand(String location, int rgb, int bright) {
+        for (String member : getMembers(location)) {
+            if (isPoweredOn(member)) {
+                //color and brightness in a single request
+                submitYeelightCommand(member, COLOR_KEY, SET_SCENE, new Object[]{SCENE_COLOR, rgb, bright == 0 ? 1 : bright});
+            } else {
+                //set_scene would switch the device on
+                submitYeelightCommand(member, COLOR_KEY, SET_RGB, new Object[]{rgb, SMOOTH, 500});
+                sendYeelightBrightCommand(member, bright);
+            }
+        }
     }
 
-    private String sendYeelightHSCommand(String location, int hue, int saturation) {
-        return sendYeelightCommand(location, "set_hsv", new Object[]{hue, saturation, SMOOTH, 500});
+    private void sendYeelightHSBCommand(String location, int hue, int saturation, int bright) {
+        for (String member : getMembers(location)) {
+            if (isPoweredOn(member)) {
+                //color and brightness in a single request
+                submitYeelightCommand(member, COLOR_KEY, SET_SCENE, new Object[]{SCENE_HSV, hue, saturation, bright == 0 ? 1 : bright});
+            } else {
+                //set_scene would switch the device on
+                submitYeelightCommand(member, COLOR_KEY, SET_HSV, new Object[]{hue, saturation, SMOOTH, 500});
+                sendYeelightBrightCommand(member, bright);
+            }
+        }
     }
 
-    private String sendYeelightCTCommand(String location, int param) {
-        return sendYeelightCommand(location, "set_ct_abx", new Object[]{param, SMOOTH, 500});
+    /**
+     * @return true only if the location is known to be on
+     */
+    private boolean isPoweredOn(String location) {
+        YeelightProps props = locationProps.get(location);
+        return props != null && props.isKnown(YeelightProps.POWER) && props.get(YeelightProps.POWER) == 1;
     }
 
-    private String sendYeelightPowerCommand(String location, String param) {
-        return sendYeelightCommand(location, SET_POWER, new Object[]{param, "", 0});
+    private void sendYeelightCTCommand(String location, int param) {
+        submitYeelightCommand(location, CT_KEY, SET_CT_ABX, new Object[]{param, SMOOTH, 500});
     }
 
-    private String sendYeelightPowerCommand(String location, String param, int mode) {
-        return sendYeelightCommand(location, SET_POWER, new Object[]{param, "", 0, mode});
+    private void sendYeelightStartFlowCommand(String location, String name) {
+        YeelightFlow flow = flows.get(name);
+        if (flow == null) {
+            logger.warn("Yeelight flow {} is not configured", name);
+            return;
+        }
+        locationFlows.put(location, name);
+        for (String member : getMembers(location)) {
+            locationFlows.put(member, name);
+        }
+        //the whole animation in a single request, a pending start or stop is replaced
+        submitYeelightCommand(location, FLOW_KEY, START_CF, flow.getParams());
     }
 
-    private String sendYeelightCommand(String location, String action, Object[] params) {
-        int index = location.indexOf(":");
-        Socket clientSocket = null;
-        try {
-            String ip = location.substring(0, index);
-            int port = Integer.parseInt(location.substring(index + 1));
-            clientSocket = new Socket(ip, port);
-            DataOutputStream outToServer = new DataOutputStream(clientSocket.getOutputStream());
-            BufferedReader inFromServer = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            String sentence = "{\"id\":" + msgid++ + ",\"method\":\"" + action + "\",\"params\":[" + getProperties(params) + "]}\r\n";
-            logger.debug("Sending sentence: {}", sentence);
-            outToServer.writeBytes(sentence);
-            return inFromServer.readLine();
-        } catch (NoRouteToHostException e) {
-            logger.debug("Location {} is probably offline", location);
-            if (action.equals(GET_PROP)) {
-                //update switches if not found location to OFF state
-                for (Object item : getOnSwitchItems(location)) {
-                    eventPublisher.postUpdate((String) item, OnOffType.OFF);
+    private void sendYeelightStopFlowCommand(String location) {
+        submitYeelightCommand(location, FLOW_KEY, STOP_CF, new Object[]{});
+    }
+
+    private void sendYeelightPowerCommand(String location, String param) {
+        submitYeelightCommand(location, POWER_KEY, SET_POWER, new Object[]{param, "", 0});
+    }
+
+    private void sendYeelightPowerCommand(String location, String param, int mode) {
+        submitYeelightCommand(location, POWER_KEY, SET_POWER, new Object[]{param, "", 0, mode});
+    }
+
+    private void setMusicMode(String location, boolean enable) {
+        if (YeelightBindingConfig.isGroup(location)) {
+            for (String member : getMembers(location)) {
+                setMusicMode(member, enable);
+            }
+            return;
+        }
+        if (enable) {
+            if (musicLocations.add(location) && !musicServer.isActive(location))
+                scheduleMusicMode(location, 0);
+        } else {
+            musicLocations.remove(location);
+            musicServer.close(location);
+            submitYeelightCommand(location, MUSIC_KEY, SET_MUSIC, new Object[]{0});
+        }
+    }
+
+    private void scheduleMusicMode(final String location, long delay) {
+        ScheduledExecutorService scheduler = commandScheduler;
+        final ExecutorService executor = connector;
+        if (!musicLocations.contains(location) || scheduler == null || scheduler.isShutdown())
+            return;
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                if (musicLocations.contains(location) && !musicServer.isActive(location) && !executor.isShutdown()) {
+                    //the local address is known only once connected
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            requestMusicMode(location);
+                        }
+                    });
                 }
             }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Asks the device to connect to the music server, until it does the commands
+     * of the location take the normal path.
+     */
+    private void requestMusicMode(String location) {
+        try {
+            int port = musicServer.start(musicPort);
+            InetAddress localAddress = connectionManager.getLocalAddress(location);
+            InetAddress remoteAddress = connectionManager.getRemoteAddress(location);
+            if (remoteAddress == null)
+                throw new IOException("Connection to " + location + " closed");
+            musicServer.expect(location, remoteAddress);
+            //through the queue of the location like any other command, a pending switch off is replaced
+            commandDispatcher.submit(new YeelightCommand(location, MUSIC_KEY, SET_MUSIC,
+                    new Object[]{1, localAddress.getHostAddress(), port}));
         } catch (IOException e) {
-            logger.error(e.toString());
-        } finally {
+            logger.warn("Cannot switch location {} to music mode: {}", location, e.toString());
+        }
+    }
 
-            if (clientSocket != null)
-                try {
-                    clientSocket.close();
-                } catch (IOException e) {
-                    //silence
+    /**
+     * Queues a command for asynchronous sending, a still queued command with the same key is replaced.
+     */
+    private void submitYeelightCommand(String location, String key, String action, Object[] params) {
+        if (YeelightBindingConfig.isGroup(location)) {
+            //every member has its own queue and connection, so the group changes at once
+            for (String member : getMembers(location)) {
+                submitYeelightCommand(member, key, action, params);
+            }
+            return;
+        }
+        //music mode has no rate limit, the command goes out at once
+        if (musicServer.send(location, action, params)) {
+            pollScheduler.activity(location);
+            return;
+        }
+        commandDispatcher.submit(new YeelightCommand(location, key, action, params));
+        //confirm the new state soon
+        pollScheduler.activity(location);
+    }
+
+    /**
+     * Sends the command without waiting for the response, errors are logged when the response arrives.
+     */
+    private YeelightResponseFuture sendYeelightCommandAsync(final String location, final String action, Object[] params) {
+        YeelightResponseFuture future = connectionManager.sendRequest(location, action, params);
+        future.addCallback(new YeelightResponseFuture.Callback() {
+            public void completed(String response) {
+                String error = YeelightCodec.decodeError(response);
+                if (error != null) {
+                    logger.warn("Location {} rejected {}: {}", location, action, error);
+                }
+            }
+
+            public void failed(IOException exception) {
+                if (exception instanceof YeelightOfflineException) {
+                    logger.debug(exception.getMessage());
+                } else {
+                    logger.debug("Cannot send {} to location {}: {}", action, location, exception.toString());
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void healthChanged(String location, YeelightLocationHealth.State state) {
+        metrics.healthChanged(location, state);
+        switch (state) {
+            case OFFLINE:
+                logger.warn("Location {} is probably offline", location);
+                //update switches of not found location to OFF state
+                for (Object item : getOnSwitchItems(location)) {
+                    eventPublisher.postUpdate((String) item, OnOffType.OFF);
                 }
+                //publish everything again once the location is back
+                locationProps.remove(location);
+                break;
+            case SUSPECT:
+                //a failed request or an advertisement of an offline location
+                logger.debug("Location {} is suspect", location);
+                break;
+            default:
+                logger.info("Location {} is online", location);
+                pollScheduler.activity(location);
         }
-        return null;
     }
 
     private Object[] getOnSwitchItems(String location) {
         ArrayList<String> list = new ArrayList<>();
         for (final YeelightBindingProvider provider : providers) {
-            for (String itemName : provider.getItemNames()) {
-                YeelightBindingConfig config = (YeelightBindingConfig) provider.getItemConfig(itemName);
-                String action = config.getAction();
-                if (config.getLocation().equals(location) && (action.equals(SET_POWER) || action.equals(NIGHTLIGHT))) {
-                    try {
-                        State oldState = itemRegistry.getItem(itemName).getState();
-                        if (oldState.equals(OnOffType.ON)) {
-                            list.add(itemName);
-                        }
-                    } catch (ItemNotFoundException e) {
-                        logger.error(e.toString());
-                    }
+            Map<YeelightAction, Set<String>> actions = provider.getItemNamesByAction(location);
+            addOnSwitchItems(list, actions.get(YeelightAction.SET_POWER));
+            addOnSwitchItems(list, actions.get(YeelightAction.NIGHTLIGHT));
+        }
+        return list.toArray();
+    }
 
+    private void addOnSwitchItems(List<String> list, Set<String> itemNames) {
+        if (itemNames == null)
+            return;
+        for (String itemName : itemNames) {
+            try {
+                State oldState = itemRegistry.getItem(itemName).getState();
+                if (oldState.equals(OnOffType.ON)) {
+                    list.add(itemName);
                 }
+            } catch (ItemNotFoundException e) {
+                logger.error(e.toString());
             }
         }
-        return list.toArray();
     }
 
-    private int getRGBValue(int red, int green, int blue) {
-        return red * 65536 + green * 256 + blue;
+    private InetSocketAddress resolveAddress(String location) {
+        if (YeelightBindingConfig.isDeviceId(location)) {
+            YeelightDevice device = deviceRegistry.get(location);
+            return device != null ? device.getAddress() : null;
+        }
+        InetSocketAddress memberAddress = memberAddresses.get(location);
+        if (memberAddress != null)
+            return memberAddress;
+        for (final YeelightBindingProvider provider : providers) {
+            for (Set<String> itemNames : provider.getItemNamesByAction(location).values()) {
+                for (String itemName : itemNames) {
+                    YeelightBindingConfig config = (YeelightBindingConfig) provider.getItemConfig(itemName);
+                    if (config != null)
+                        return config.getAddress();
+                }
+            }
+        }
+        return null;
     }
 
-    private Color getRGBColor(int rgb) {
-        int red = rgb / 65536;
-        int green = (rgb - red * 65536) / 256;
-        int blue = rgb - red * 65536 - green * 256;
-        return new Color(red, green, blue);
+    private YeelightBindingConfig getItemConfig(String itemName) {
+        YeelightBindingProvider provider = itemProviders.get(itemName);
+        return provider != null ? (YeelightBindingConfig) provider.getItemConfig(itemName) : null;
+    }
 
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void bindingChanged(BindingProvider provider, String itemName) {
+        super.bindingChanged(provider, itemName);
+        if (provider.providesBindingFor(itemName)) {
+            itemProviders.put(itemName, (YeelightBindingProvider) provider);
+            invalidateItem((YeelightBindingProvider) provider, itemName);
+        } else {
+            itemProviders.remove(itemName, provider);
+        }
     }
 
-    private YeelightBindingConfig getItemConfig(String itemName) {
-        for (final YeelightBindingProvider provider : providers) {
-            if (provider.getItemNames().contains(itemName))
-                return (YeelightBindingConfig) provider.getItemConfig(itemName);
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void allBindingsChanged(BindingProvider provider) {
+        super.allBindingsChanged(provider);
+        itemProviders.values().removeAll(Collections.singleton(provider));
+        for (String itemName : provider.getItemNames()) {
+            itemProviders.put(itemName, (YeelightBindingProvider) provider);
+            invalidateItem((YeelightBindingProvider) provider, itemName);
         }
-        return null;
     }
 
-    private String getProperties(Object[] properties) {
-        StringBuilder builder = new StringBuilder();
-        boolean first = true;
-        for (Object o : properties) {
-            if (!first)
-                builder.append(",");
-            else
-                first = false;
+    /**
+     * Only changes are published, so a new or reloaded item gets its state from the next
+     * result only if the cached properties of its action are forgotten.
+     */
+    private void invalidateItem(YeelightBindingProvider provider, String itemName) {
+        YeelightBindingConfig config = (YeelightBindingConfig) provider.getItemConfig(itemName);
+        if (config == null)
+            return;
+        invalidateProperties(config.getLocation(), config.getAction());
+    }
 
-            if (o instanceof String) {
-                builder.append("\"");
-                builder.append(o);
-                builder.append("\"");
-            } else
-                builder.append(o);
-        }
-        return builder.toString();
+    /**
+     * @{inheritDoc}
+     */
+    @Override
+    public void removeBindingProvider(YeelightBindingProvider provider) {
+        super.removeBindingProvider(provider);
+        itemProviders.values().removeAll(Collections.singleton(provider));
     }
 
     /**
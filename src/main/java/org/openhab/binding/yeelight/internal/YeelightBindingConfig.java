@@ -1,7 +1,10 @@
 package org.openhab.binding.yeelight.internal;
 
+import org.openhab.binding.yeelight.YeelightAction;
 import org.openhab.core.binding.BindingConfig;
 
+import java.net.InetSocketAddress;
+
 /**
  * This is a helper class holding binding specific configuration details
  *
@@ -9,11 +12,15 @@ import org.openhab.core.binding.BindingConfig;
  * @since 1.9.0
  */
 class YeelightBindingConfig implements BindingConfig {
+    static final String GROUP_PREFIX = "group:";
+
     // put member fields here which holds the parsed values
     private String location;
-    private String action;
+    private YeelightAction action;
+    private String parameter;
+    private InetSocketAddress address;
 
-    public String getAction() {
+    public YeelightAction getAction() {
         return action;
     }
 
@@ -21,8 +28,71 @@ class YeelightBindingConfig implements BindingConfig {
         return location;
     }
 
-    public YeelightBindingConfig(String location, String action) {
+    /**
+     * @return the part after ':' of the action like the flow name of flow:sunrise, null if there is none
+     */
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * @return the configured address or null if the device is bound by its id or a group
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return true if the location is a group like group:living whose members
+     * are listed in the binding configuration
+     */
+    public static boolean isGroup(String location) {
+        return location.startsWith(GROUP_PREFIX) && location.length() > GROUP_PREFIX.length();
+    }
+
+    /**
+     * @return true if the location is a device id like 0x0000000002dfb19a
+     * rather than an ip:port address
+     */
+    public static boolean isDeviceId(String location) {
+        if (location.length() <= 2 || !location.startsWith("0x")) {
+            return false;
+        }
+        for (int i = 2; i < location.length(); i++) {
+            if (Character.digit(location.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the address of an ip:port location, the host is resolved if possible
+     * @throws IllegalArgumentException if the location is no valid ip:port
+     */
+    public static InetSocketAddress parseAddress(String location) {
+        int pos = location.lastIndexOf(":");
+        if (pos <= 0) {
+            throw new IllegalArgumentException("invalid Yeelight location '" + location
+                    + "', expected ip:port, device id or group:name");
+        }
+        int port;
+        try {
+            port = Integer.parseInt(location.substring(pos + 1));
+        } catch (NumberFormatException e) {
+            port = -1;
+        }
+        if (port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("invalid port in Yeelight location '" + location + "'");
+        }
+        //resolved once here, an unresolvable host name is retried on connect
+        return new InetSocketAddress(location.substring(0, pos), port);
+    }
+
+    public YeelightBindingConfig(String location, YeelightAction action, String parameter, InetSocketAddress address) {
         this.location = location;
         this.action = action;
+        this.parameter = parameter;
+        this.address = address;
     }
 }
@@ -0,0 +1,383 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Encoder and decoder of the Yeelight JSON-RPC messages. Requests are written
+ * straight into a reusable buffer and the property values of responses and
+ * notifications are decoded in place into a {@link YeelightProps} snapshot,
+ * without building intermediate strings or objects.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+final class YeelightCodec {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final byte[] REQUEST_ID = "{\"id\":".getBytes(ASCII);
+    private static final byte[] REQUEST_METHOD = ",\"method\":\"".getBytes(ASCII);
+    private static final byte[] REQUEST_PARAMS = "\",\"params\":[".getBytes(ASCII);
+    private static final byte[] REQUEST_END = "]}\r\n".getBytes(ASCII);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private YeelightCodec() {
+    }
+
+    /**
+     * Appends a request line (terminated by \r\n) to the buffer.
+     */
+    static void encodeRequest(ByteArrayOutputStream out, long id, String method, Object[] params) {
+        out.write(REQUEST_ID, 0, REQUEST_ID.length);
+        writeLong(out, id);
+        out.write(REQUEST_METHOD, 0, REQUEST_METHOD.length);
+        writeString(out, method);
+        out.write(REQUEST_PARAMS, 0, REQUEST_PARAMS.length);
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0)
+                out.write(',');
+            Object param = params[i];
+            if (param instanceof String) {
+                out.write('"');
+                writeString(out, (String) param);
+                out.write('"');
+            } else if (param instanceof Integer || param instanceof Long) {
+                writeLong(out, ((Number) param).longValue());
+            } else {
+                writeString(out, String.valueOf(param));
+            }
+        }
+        out.write(REQUEST_END, 0, REQUEST_END.length);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            out.write((int) ('0' + value / divisor % 10));
+            divisor /= 10;
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                out.write('\\');
+                out.write('u');
+                out.write(HEX[(c >> 12) & 0xf]);
+                out.write(HEX[(c >> 8) & 0xf]);
+                out.write(HEX[(c >> 4) & 0xf]);
+                out.write(HEX[c & 0xf]);
+            } else {
+                out.write(c);
+            }
+        }
+    }
+
+    /**
+     * @return true if the line is an unsolicited message rather than a response
+     */
+    static boolean isNotification(String line) {
+        return line.contains("\"method\"");
+    }
+
+    /**
+     * @return the id of a response or -1 if the line has no id
+     */
+    static long decodeId(String line) {
+        try {
+            Scanner scanner = new Scanner(line);
+            scanner.expect('{');
+            while (!scanner.consume('}')) {
+                scanner.readString();
+                scanner.expect(':');
+                if (scanner.tokenEquals("id")) {
+                    return scanner.readLong();
+                }
+                scanner.skipValue();
+                scanner.consume(',');
+            }
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the error message of an error response or null if the line is no error response
+     */
+    static String decodeError(String line) {
+        if (!line.contains("\"error\"")) {
+            return null;
+        }
+        try {
+            Scanner scanner = new Scanner(line);
+            scanner.expect('{');
+            while (!scanner.consume('}')) {
+                scanner.readString();
+                scanner.expect(':');
+                if (scanner.tokenEquals("error")) {
+                    return scanner.readErrorMessage();
+                }
+                scanner.skipValue();
+                scanner.consume(',');
+            }
+        } catch (IllegalArgumentException e) {
+            return line;
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the result of a get_prop response, the values are expected in the order of
+     * {@link YeelightProps#getNames(int)} for the requested mask.
+     *
+     * @return false if the line contains no result
+     */
+    static boolean decodeProps(String line, int mask, YeelightProps props) {
+        try {
+            Scanner scanner = new Scanner(line);
+            scanner.expect('{');
+            while (!scanner.consume('}')) {
+                scanner.readString();
+                scanner.expect(':');
+                if (scanner.tokenEquals("result")) {
+                    scanner.expect('[');
+                    int remaining = mask;
+                    while (!scanner.consume(']')) {
+                        if (remaining != 0) {
+                            int property = Integer.numberOfTrailingZeros(remaining);
+                            remaining &= remaining - 1;
+                            //properties the device does not support are reported as ""
+                            int value = scanner.readPropertyValue(property);
+                            props.set(property, value != UNKNOWN ? value : 0);
+                        } else {
+                            scanner.skipValue();
+                        }
+                        scanner.consume(',');
+                    }
+                    return true;
+                }
+                scanner.skipValue();
+                scanner.consume(',');
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the parameters of a "props" notification into the snapshot.
+     *
+     * @return false if the line is no valid "props" notification, the snapshot must be discarded then
+     */
+    static boolean decodeNotification(String line, YeelightProps props) {
+        boolean isProps = false;
+        try {
+            Scanner scanner = new Scanner(line);
+            scanner.expect('{');
+            while (!scanner.consume('}')) {
+                scanner.readString();
+                scanner.expect(':');
+                if (scanner.tokenEquals("method")) {
+                    scanner.readString();
+                    isProps = scanner.tokenEquals("props");
+                } else if (scanner.tokenEquals("params")) {
+                    scanner.expect('{');
+                    while (!scanner.consume('}')) {
+                        scanner.readString();
+                        scanner.expect(':');
+                        int property = scanner.tokenIndex(YeelightProps.NAMES);
+                        if (property >= 0) {
+                            int value = scanner.readPropertyValue(property);
+                            if (value != UNKNOWN)
+                                props.set(property, value);
+                        } else {
+                            scanner.skipValue();
+                        }
+                        scanner.consume(',');
+                    }
+                } else {
+                    scanner.skipValue();
+                }
+                scanner.consume(',');
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return isProps;
+    }
+
+    /**
+     * Minimal JSON scanner working in place on the message. String tokens are
+     * not copied, only their bounds are remembered.
+     */
+    private static final class Scanner {
+        private final String text;
+        private int pos = 0;
+        private int tokenStart;
+        private int tokenEnd;
+
+        Scanner(String text) {
+            this.text = text;
+        }
+
+        private char peek() {
+            skipWhitespace();
+            if (pos >= text.length())
+                throw new IllegalArgumentException("Unexpected end of message");
+            return text.charAt(pos);
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && text.charAt(pos) <= ' ')
+                pos++;
+        }
+
+        boolean consume(char c) {
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c))
+                throw new IllegalArgumentException("Expected '" + c + "' at " + pos);
+        }
+
+        void readString() {
+            expect('"');
+            tokenStart = pos;
+            while (pos < text.length() && text.charAt(pos) != '"') {
+                if (text.charAt(pos) == '\\')
+                    pos++;
+                pos++;
+            }
+            if (pos >= text.length())
+                throw new IllegalArgumentException("Unterminated string");
+            tokenEnd = pos++;
+        }
+
+        boolean tokenEquals(String value) {
+            return tokenEnd - tokenStart == value.length() && text.regionMatches(tokenStart, value, 0, value.length());
+        }
+
+        int tokenIndex(String[] values) {
+            for (int i = 0; i < values.length; i++) {
+                if (tokenEquals(values[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        int readPropertyValue(int property) {
+            if (peek() == '"') {
+                readString();
+                if (property == YeelightProps.POWER) {
+                    return tokenEquals("on") ? 1 : tokenEquals("off") ? 0 : UNKNOWN;
+                }
+                return parseInt(tokenStart, tokenEnd);
+            }
+            int start = pos;
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '-'))
+                pos++;
+            if (start == pos) {
+                skipValue();
+                return UNKNOWN;
+            }
+            return parseInt(start, pos);
+        }
+
+        long readLong() {
+            skipWhitespace();
+            long value = 0;
+            int start = pos;
+            while (pos < text.length() && Character.isDigit(text.charAt(pos)))
+                value = value * 10 + (text.charAt(pos++) - '0');
+            return start == pos ? -1 : value;
+        }
+
+        private int parseInt(int start, int end) {
+            if (start == end)
+                return UNKNOWN;
+            boolean negative = text.charAt(start) == '-';
+            int value = 0;
+            for (int i = negative ? start + 1 : start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9')
+                    return UNKNOWN;
+                value = value * 10 + (c - '0');
+            }
+            return negative ? -value : value;
+        }
+
+        void skipValue() {
+            char c = peek();
+            if (c == '"') {
+                readString();
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    c = text.charAt(pos);
+                    if (c == '"') {
+                        readString();
+                        continue;
+                    }
+                    if (c == '{' || c == '[')
+                        depth++;
+                    else if (c == '}' || c == ']')
+                        depth--;
+                    pos++;
+                } while (depth > 0 && pos < text.length());
+                if (depth > 0)
+                    throw new IllegalArgumentException("Unterminated value");
+            } else {
+                while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0)
+                    pos++;
+            }
+        }
+
+        String readErrorMessage() {
+            if (peek() != '{') {
+                int start = pos;
+                skipValue();
+                return text.substring(start, pos);
+            }
+            expect('{');
+            while (!consume('}')) {
+                readString();
+                expect(':');
+                if (tokenEquals("message") && peek() == '"') {
+                    readString();
+                    return text.substring(tokenStart, tokenEnd);
+                }
+                skipValue();
+                consume(',');
+            }
+            return "unknown error";
+        }
+    }
+}
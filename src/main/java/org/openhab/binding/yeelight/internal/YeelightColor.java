@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+/**
+ * Conversion between the packed 0xRRGGBB color of the devices and hue (0-359),
+ * saturation (0-100) and brightness (0-100). It follows the rules of the
+ * java.awt.Color conversion rounded to whole numbers, but uses integer math
+ * only, so neither AWT nor any object is needed on a color update.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+final class YeelightColor {
+
+    //brightness in percent of a color channel
+    private static final int[] PERCENT = new int[256];
+
+    static {
+        for (int value = 0; value < PERCENT.length; value++) {
+            PERCENT[value] = (value * 200 + 255) / 510;
+        }
+    }
+
+    private YeelightColor() {
+    }
+
+    static int getRed(int rgb) {
+        return (rgb >> 16) & 0xff;
+    }
+
+    static int getGreen(int rgb) {
+        return (rgb >> 8) & 0xff;
+    }
+
+    static int getBlue(int rgb) {
+        return rgb & 0xff;
+    }
+
+    static int pack(int red, int green, int blue) {
+        return (red & 0xff) << 16 | (green & 0xff) << 8 | (blue & 0xff);
+    }
+
+    /**
+     * @return the packed 0xRRGGBB color
+     */
+    static int fromHSB(int hue, int saturation, int brightness) {
+        hue = ((hue % 360) + 360) % 360;
+        saturation = clamp(saturation);
+        brightness = clamp(brightness);
+
+        int value = (brightness * 255 + 50) / 100;
+        if (saturation == 0)
+            return pack(value, value, value);
+
+        //the fraction of the sector is kept in 1/60, the results are rounded to 0-255
+        int fraction = hue % 60;
+        int p = (brightness * (100 - saturation) * 255 + 5000) / 10000;
+        int q = (brightness * (6000 - saturation * fraction) * 255 + 300000) / 600000;
+        int t = (brightness * (6000 - saturation * (60 - fraction)) * 255 + 300000) / 600000;
+        switch (hue / 60) {
+            case 0:
+                return pack(value, t, p);
+            case 1:
+                return pack(q, value, p);
+            case 2:
+                return pack(p, value, t);
+            case 3:
+                return pack(p, q, value);
+            case 4:
+                return pack(t, p, value);
+            default:
+                return pack(value, p, q);
+        }
+    }
+
+    static int getHue(int rgb) {
+        int red = getRed(rgb);
+        int green = getGreen(rgb);
+        int blue = getBlue(rgb);
+        int max = Math.max(red, Math.max(green, blue));
+        int diff = max - Math.min(red, Math.min(green, blue));
+        if (diff == 0)
+            return 0;
+
+        //the position on the color wheel in 1/diff of a 60 degree sector
+        int sector;
+        if (red == max)
+            sector = green - blue;
+        else if (green == max)
+            sector = 2 * diff + blue - red;
+        else
+            sector = 4 * diff + red - green;
+        if (sector < 0)
+            sector += 6 * diff;
+        int hue = (sector * 120 + diff) / (2 * diff);
+        return hue == 360 ? 0 : hue;
+    }
+
+    static int getSaturation(int rgb) {
+        int max = Math.max(getRed(rgb), Math.max(getGreen(rgb), getBlue(rgb)));
+        if (max == 0)
+            return 0;
+        int min = Math.min(getRed(rgb), Math.min(getGreen(rgb), getBlue(rgb)));
+        return ((max - min) * 200 + max) / (2 * max);
+    }
+
+    static int getBrightness(int rgb) {
+        return PERCENT[Math.max(getRed(rgb), Math.max(getGreen(rgb), getBlue(rgb)))];
+    }
+
+    private static int clamp(int percent) {
+        return percent < 0 ? 0 : percent > 100 ? 100 : percent;
+    }
+}
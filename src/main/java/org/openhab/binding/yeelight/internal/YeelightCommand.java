@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+/**
+ * A command waiting to be sent to a Yeelight location. Commands with the same
+ * key change the same device property, so only the latest one needs to be sent.
+ * The future of the command is completed with the response once it was sent.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightCommand {
+
+    enum Priority {
+        //sent first, e.g. item commands
+        COMMAND,
+        //sent when no command is queued, dropped when a command arrives
+        POLL
+    }
+
+    private final String location;
+    private final String key;
+    private final String method;
+    private final Object[] params;
+    private final Priority priority;
+    private final YeelightResponseFuture future;
+
+    /**
+     * @param key the property changed by the command or null if the command must not be coalesced
+     */
+    YeelightCommand(String location, String key, String method, Object[] params) {
+        this(location, key, method, params, Priority.COMMAND);
+    }
+
+    YeelightCommand(String location, String key, String method, Object[] params, Priority priority) {
+        this.location = location;
+        this.key = key;
+        this.method = method;
+        this.params = params;
+        this.priority = priority;
+        //each send has its own response deadline, so the command does not need one
+        this.future = new YeelightResponseFuture(-1, method, Long.MAX_VALUE);
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Object[] getParams() {
+        return params;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public YeelightResponseFuture getFuture() {
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return method + "@" + location;
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the commands of every location asynchronously, one at a time: the next
+ * command is sent once the response to the previous one arrived. While a
+ * command is in flight, newer commands for the same property replace the queued
+ * older ones, so a burst of dimmer or color changes ends up as the latest value
+ * only. The commands are sent under a per location token bucket matching the
+ * device quota.
+ * <p>
+ * Sending to a location which is not connected yet connects first, which blocks
+ * for up to the connect timeout. Such commands are sent from the connector, so an
+ * unreachable device does not hold one of the shared scheduler threads.
+ * <p>
+ * Poll requests share the queue with a lower priority: they are sent only when
+ * no command is queued and queued polls are dropped when a command arrives, as
+ * their result would be stale anyway.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightCommandDispatcher {
+
+    static final int DEFAULT_RATE = 60;
+    static final int DEFAULT_BURST = 5;
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(YeelightCommandDispatcher.class);
+
+    interface Sender {
+        YeelightResponseFuture send(YeelightCommand command);
+
+        /**
+         * @return true if a command to the location is sent without connecting first
+         */
+        boolean isConnected(String location);
+    }
+
+    private final ConcurrentMap<String, CommandQueue> queues = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Executor connector;
+    private final Sender sender;
+
+    private volatile int rate = DEFAULT_RATE;
+    private volatile int burst = DEFAULT_BURST;
+
+    YeelightCommandDispatcher(ScheduledExecutorService scheduler, Executor connector, Sender sender) {
+        this.scheduler = scheduler;
+        this.connector = connector;
+        this.sender = sender;
+    }
+
+    public void setRate(int rate, int burst) {
+        this.rate = rate;
+        this.burst = burst;
+        for (CommandQueue queue : queues.values()) {
+            queue.limiter.setRate(rate, burst);
+        }
+    }
+
+    /**
+     * Queues the command.
+     *
+     * @return the future of the command, it is cancelled if the command is dropped
+     */
+    public YeelightResponseFuture submit(YeelightCommand command) {
+        getQueue(command.getLocation()).submit(command);
+        return command.getFuture();
+    }
+
+    /**
+     * Drops all queued commands.
+     */
+    public void clear() {
+        for (CommandQueue queue : queues.values()) {
+            queue.cancelAll();
+        }
+        queues.clear();
+    }
+
+    private CommandQueue getQueue(String location) {
+        CommandQueue queue = queues.get(location);
+        if (queue == null) {
+            CommandQueue newQueue = new CommandQueue();
+            queue = queues.putIfAbsent(location, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Passes the outcome of a request to the future of a command.
+     */
+    private static class Relay implements YeelightResponseFuture.Callback {
+        private final YeelightResponseFuture target;
+
+        Relay(YeelightResponseFuture target) {
+            this.target = target;
+        }
+
+        public void completed(String response) {
+            target.complete(response);
+        }
+
+        public void failed(IOException exception) {
+            target.fail(exception);
+        }
+    }
+
+    private class CommandQueue implements Runnable, YeelightResponseFuture.Callback {
+
+        private final YeelightRateLimiter limiter = new YeelightRateLimiter(rate, burst);
+        private final Map<Object, YeelightCommand> pending = new LinkedHashMap<>();
+        private final Map<Object, YeelightCommand> polls = new LinkedHashMap<>();
+        private boolean running = false;
+
+        synchronized void submit(YeelightCommand command) {
+            if (command.getPriority() == YeelightCommand.Priority.POLL) {
+                if (!pending.isEmpty()) {
+                    logger.trace("Dropping {}, commands are queued", command);
+                    command.getFuture().cancel(false);
+                    return;
+                }
+                enqueue(polls, command);
+            } else {
+                for (YeelightCommand poll : polls.values()) {
+                    logger.trace("Dropping queued {}", poll);
+                    poll.getFuture().cancel(false);
+                }
+                polls.clear();
+                enqueue(pending, command);
+            }
+            if (!running) {
+                running = true;
+                scheduler.execute(this);
+            }
+        }
+
+        private void enqueue(Map<Object, YeelightCommand> queue, YeelightCommand command) {
+            Object key = command.getKey() != null ? command.getKey() : new Object();
+            YeelightCommand replaced = queue.remove(key);
+            if (replaced != null) {
+                logger.trace("Replacing queued {}", replaced);
+                //the replaced command is done once the newer one is
+                command.getFuture().addCallback(new Relay(replaced.getFuture()));
+            }
+            queue.put(key, command);
+        }
+
+        synchronized void cancelAll() {
+            for (YeelightCommand command : pending.values()) {
+                command.getFuture().cancel(false);
+            }
+            for (YeelightCommand command : polls.values()) {
+                command.getFuture().cancel(false);
+            }
+            pending.clear();
+            polls.clear();
+        }
+
+        private synchronized YeelightCommand poll() {
+            YeelightCommand command = next(pending);
+            if (command == null) {
+                command = next(polls);
+            }
+            if (command == null) {
+                running = false;
+            }
+            return command;
+        }
+
+        private YeelightCommand next(Map<Object, YeelightCommand> queue) {
+            Iterator<YeelightCommand> iterator = queue.values().iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            YeelightCommand command = iterator.next();
+            iterator.remove();
+            return command;
+        }
+
+        private void purge(Map<Object, YeelightCommand> queue) {
+            Iterator<YeelightCommand> iterator = queue.values().iterator();
+            while (iterator.hasNext()) {
+                //commands cancelled by their caller are not sent
+                if (iterator.next().getFuture().isDone()) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private synchronized boolean isEmpty() {
+            purge(pending);
+            purge(polls);
+            if (pending.isEmpty() && polls.isEmpty()) {
+                running = false;
+                return true;
+            }
+            return false;
+        }
+
+        public void run() {
+            while (!isEmpty()) {
+                long delay = limiter.tryAcquire();
+                if (delay > 0) {
+                    scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                final YeelightCommand command = poll();
+                if (command == null) {
+                    return;
+                }
+                if (!sender.isConnected(command.getLocation())) {
+                    connector.execute(new Runnable() {
+                        public void run() {
+                            if (!send(command)) {
+                                scheduler.execute(CommandQueue.this);
+                            }
+                        }
+                    });
+                    return;
+                }
+                if (send(command)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return true if the command is in flight, the queue continues in completed() or failed()
+         */
+        private boolean send(YeelightCommand command) {
+            try {
+                YeelightResponseFuture future = sender.send(command);
+                future.addCallback(new Relay(command.getFuture()));
+                future.addCallback(this);
+                return true;
+            } catch (RuntimeException e) {
+                logger.error("Cannot send {}", command, e);
+                command.getFuture().fail(new IOException("Cannot send " + command, e));
+                return false;
+            }
+        }
+
+        public void completed(String response) {
+            scheduler.execute(this);
+        }
+
+        public void failed(IOException exception) {
+            scheduler.execute(this);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-lived control connection to a single Yeelight device. The socket is
+ * opened lazily and kept open between commands; after a failure it is closed
+ * and reopened on the next command.
+ * <p>
+ * Requests are pipelined: any number of them may be in flight at once, each
+ * one gets a unique id and its response is matched by that id by the reader
+ * thread of the connection. Unsolicited notifications are passed to the
+ * listener.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightConnection {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(YeelightConnection.class);
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int SWEEP_INTERVAL = 500;
+    private static final int BUFFER_SIZE = 1024;
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private final String location;
+    private final YeelightNotificationListener listener;
+    private final YeelightConnectionManager.AddressResolver resolver;
+    private final AtomicLong nextId = new AtomicLong();
+
+    private volatile int connectTimeout = YeelightConnectionManager.DEFAULT_CONNECT_TIMEOUT;
+    private volatile int readTimeout = YeelightConnectionManager.DEFAULT_READ_TIMEOUT;
+
+    //guards connecting and writing, reused for every request
+    private final ByteArrayOutputStream request = new ByteArrayOutputStream(128);
+    private volatile Session session;
+
+    YeelightConnection(String location, YeelightNotificationListener listener, YeelightConnectionManager.AddressResolver resolver) {
+        this.location = location;
+        this.listener = listener;
+        this.resolver = resolver;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sends a request without waiting for its response. A request written to a
+     * connection which turns out to be stale is retried once on a fresh connection.
+     */
+    public YeelightResponseFuture sendRequest(String method, Object[] params) {
+        YeelightResponseFuture future = new YeelightResponseFuture(nextId.incrementAndGet(), method,
+                System.currentTimeMillis() + readTimeout);
+        //failed after leaving the lock, their callbacks may send again from this thread
+        Map<YeelightResponseFuture, IOException> failures = new LinkedHashMap<>();
+        synchronized (request) {
+            request.reset();
+            YeelightCodec.encodeRequest(request, future.getId(), method, params);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sending to {}: {}", location, new String(request.toByteArray(), CHARSET).trim());
+            }
+
+            Session current = session;
+            boolean reused = current != null && current.isOpen();
+            try {
+                if (!reused) {
+                    current = connect();
+                }
+                current.write(future);
+            } catch (IOException e) {
+                shutdownSession(current, e, failures);
+                if (reused) {
+                    logger.debug("Connection to {} went stale, reconnecting", location);
+                    try {
+                        current = connect();
+                        current.write(future);
+                    } catch (IOException e2) {
+                        shutdownSession(current, e2, failures);
+                        failures.put(future, e2);
+                    }
+                } else {
+                    failures.put(future, e);
+                }
+            }
+        }
+        for (Map.Entry<YeelightResponseFuture, IOException> failure : failures.entrySet()) {
+            failure.getKey().fail(failure.getValue());
+        }
+        return future;
+    }
+
+    private Session connect() throws IOException {
+        InetSocketAddress address = resolver.resolve(location);
+        if (address == null) {
+            throw new IOException("Unknown location " + location);
+        }
+        if (address.isUnresolved()) {
+            address = new InetSocketAddress(address.getHostString(), address.getPort());
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, connectTimeout);
+            socket.setKeepAlive(true);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(SWEEP_INTERVAL);
+            Session newSession = new Session(socket);
+            session = newSession;
+            newSession.start();
+            logger.debug("Opened connection to {}", location);
+            return newSession;
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException e2) {
+                //silence
+            }
+            throw e;
+        }
+    }
+
+    public boolean isConnected() {
+        Session current = session;
+        return current != null && current.isOpen();
+    }
+
+    /**
+     * @return the local address the device is reached from, connecting if necessary
+     */
+    public InetAddress getLocalAddress() throws IOException {
+        synchronized (request) {
+            Session current = session;
+            if (current == null || !current.isOpen()) {
+                current = connect();
+            }
+            return current.socket.getLocalAddress();
+        }
+    }
+
+    /**
+     * @return the address of the device or null if not connected
+     */
+    public InetAddress getRemoteAddress() {
+        Session current = session;
+        return current != null ? current.socket.getInetAddress() : null;
+    }
+
+    public void close() {
+        closeSession(session, new IOException("Connection to " + location + " closed"));
+    }
+
+    private void closeSession(Session current, IOException reason) {
+        if (current != null) {
+            current.close(reason);
+        }
+    }
+
+    private void shutdownSession(Session current, IOException reason, Map<YeelightResponseFuture, IOException> failures) {
+        if (current != null) {
+            for (YeelightResponseFuture future : current.shutdown()) {
+                failures.put(future, reason);
+            }
+        }
+    }
+
+    /**
+     * One socket of the connection together with its in-flight requests.
+     */
+    private class Session implements Runnable {
+        private final Socket socket;
+        private final InputStream input;
+        private final OutputStream output;
+        private final ConcurrentMap<Long, YeelightResponseFuture> pending = new ConcurrentHashMap<>();
+        private volatile boolean open = true;
+
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.input = socket.getInputStream();
+            this.output = socket.getOutputStream();
+        }
+
+        void start() {
+            Thread thread = new Thread(this, "Yeelight connection " + location);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        boolean isOpen() {
+            return open && !socket.isClosed();
+        }
+
+        void write(YeelightResponseFuture future) throws IOException {
+            pending.put(future.getId(), future);
+            try {
+                request.writeTo(output);
+                output.flush();
+            } catch (IOException e) {
+                pending.remove(future.getId());
+                throw e;
+            }
+        }
+
+        public void run() {
+            IOException reason = new IOException("Connection closed by " + location);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length = 0;
+            try {
+                while (open) {
+                    int read;
+                    try {
+                        read = input.read(buffer, length, buffer.length - length);
+                    } catch (SocketTimeoutException e) {
+                        expire();
+                        continue;
+                    }
+                    if (read < 0) {
+                        break;
+                    }
+
+                    int end = length + read;
+                    int lineStart = 0;
+                    for (int i = length; i < end; i++) {
+                        if (buffer[i] == '\n') {
+                            String line = new String(buffer, lineStart, i - lineStart, CHARSET).trim();
+                            if (!line.isEmpty()) {
+                                try {
+                                    dispatch(line);
+                                } catch (RuntimeException e) {
+                                    //a bad message must not take the connection down
+                                    logger.error("Cannot process message from {}: {}", location, line, e);
+                                }
+                            }
+                            lineStart = i + 1;
+                        }
+                    }
+                    length = end - lineStart;
+                    if (lineStart > 0) {
+                        System.arraycopy(buffer, lineStart, buffer, 0, length);
+                    } else if (length == buffer.length) {
+                        if (buffer.length >= MAX_LINE_LENGTH) {
+                            throw new IOException("Message from " + location + " too long");
+                        }
+                        byte[] bigger = new byte[buffer.length * 2];
+                        System.arraycopy(buffer, 0, bigger, 0, length);
+                        buffer = bigger;
+                    }
+                    expire();
+                }
+            } catch (IOException e) {
+                reason = e;
+            } finally {
+                close(reason);
+                logger.debug("Connection to {} closed", location);
+            }
+        }
+
+        private void dispatch(String line) {
+            if (YeelightCodec.isNotification(line)) {
+                logger.debug("Location: {}, notification: {}", location, line);
+                listener.notificationReceived(location, line);
+                return;
+            }
+            long id = YeelightCodec.decodeId(line);
+            YeelightResponseFuture future = pending.remove(id);
+            if (future != null) {
+                future.complete(line);
+            } else {
+                logger.debug("Location: {}, unexpected response: {}", location, line);
+            }
+        }
+
+        private void expire() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (YeelightResponseFuture future : pending.values()) {
+                if (now >= future.getDeadline()) {
+                    //a device which stops responding is reconnected
+                    close(new SocketTimeoutException("No response from " + location + " to " + future.getMethod()));
+                    return;
+                }
+            }
+        }
+
+        void close(IOException reason) {
+            for (YeelightResponseFuture future : shutdown()) {
+                future.fail(reason);
+            }
+        }
+
+        /**
+         * Closes the socket without failing the in-flight requests.
+         *
+         * @return the in-flight requests, to be failed by the caller
+         */
+        List<YeelightResponseFuture> shutdown() {
+            open = false;
+            if (session == this) {
+                session = null;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //silence
+            }
+            List<YeelightResponseFuture> orphaned = new ArrayList<>();
+            Iterator<YeelightResponseFuture> iterator = pending.values().iterator();
+            while (iterator.hasNext()) {
+                orphaned.add(iterator.next());
+                iterator.remove();
+            }
+            return orphaned;
+        }
+    }
+}
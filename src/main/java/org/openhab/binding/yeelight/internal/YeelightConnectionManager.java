@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one persistent control connection per Yeelight location (ip:port).
+ * Yeelight devices accept only a handful of simultaneous TCP connections
+ * (the mobile app needs one too), so all traffic to a device shares a single
+ * connection. Requests are pipelined over it and matched to their responses
+ * by id, see {@link YeelightConnection}.
+ * <p>
+ * The manager also tracks the health of every location, requests to offline
+ * locations fail fast with a {@link YeelightOfflineException}.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightConnectionManager {
+
+    static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+    static final int DEFAULT_READ_TIMEOUT = 3000;
+
+    private final ConcurrentMap<String, YeelightConnection> connections = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, YeelightLocationHealth> healths = new ConcurrentHashMap<>();
+    interface AddressResolver {
+        /**
+         * @return the address of the location or null if the location is unknown
+         */
+        InetSocketAddress resolve(String location);
+    }
+
+    private final YeelightNotificationListener listener;
+    private final AddressResolver resolver;
+    private final YeelightMetrics metrics;
+
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+    YeelightConnectionManager(YeelightNotificationListener listener, AddressResolver resolver, YeelightMetrics metrics) {
+        this.listener = listener;
+        this.resolver = resolver;
+        this.metrics = metrics;
+    }
+
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        for (YeelightConnection connection : connections.values()) {
+            connection.setTimeouts(connectTimeout, readTimeout);
+        }
+    }
+
+    /**
+     * Sends a request without waiting for its response, failures are reported through the returned future.
+     */
+    public YeelightResponseFuture sendRequest(final String location, final String method, Object[] params) {
+        final YeelightLocationHealth health = getHealth(location);
+        if (!health.allowRequest()) {
+            metrics.requestFailed(location, method);
+            return YeelightResponseFuture.failed(method, new YeelightOfflineException(location));
+        }
+        final long start = System.currentTimeMillis();
+        YeelightResponseFuture future = getConnection(location).sendRequest(method, params);
+        future.addCallback(new YeelightResponseFuture.Callback() {
+            public void completed(String response) {
+                metrics.requestCompleted(location, method, System.currentTimeMillis() - start,
+                        YeelightCodec.decodeError(response) != null);
+                updateHealth(location, health.success(), YeelightLocationHealth.State.HEALTHY);
+            }
+
+            public void failed(IOException exception) {
+                metrics.requestFailed(location, method);
+                YeelightLocationHealth.State previous = health.failure();
+                updateHealth(location, previous, health.getState());
+            }
+        });
+        return future;
+    }
+
+    private void updateHealth(String location, YeelightLocationHealth.State previous, YeelightLocationHealth.State current) {
+        if (previous != current) {
+            listener.healthChanged(location, current);
+        }
+    }
+
+    /**
+     * Called whenever a device advertises itself on the network.
+     */
+    public void deviceSeen(String location) {
+        YeelightLocationHealth health = healths.get(location);
+        if (health != null) {
+            YeelightLocationHealth.State previous = health.seen();
+            updateHealth(location, previous, health.getState());
+        }
+    }
+
+    public YeelightLocationHealth.State getHealthState(String location) {
+        YeelightLocationHealth health = healths.get(location);
+        return health != null ? health.getState() : YeelightLocationHealth.State.HEALTHY;
+    }
+
+    private YeelightLocationHealth getHealth(String location) {
+        YeelightLocationHealth health = healths.get(location);
+        if (health == null) {
+            YeelightLocationHealth newHealth = new YeelightLocationHealth();
+            health = healths.putIfAbsent(location, newHealth);
+            if (health == null) {
+                health = newHealth;
+            }
+        }
+        return health;
+    }
+
+    private YeelightConnection getConnection(String location) {
+        YeelightConnection connection = connections.get(location);
+        if (connection == null) {
+            YeelightConnection newConnection = new YeelightConnection(location, listener, resolver);
+            newConnection.setTimeouts(connectTimeout, readTimeout);
+            connection = connections.putIfAbsent(location, newConnection);
+            if (connection == null) {
+                connection = newConnection;
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * @return the local address the location is reached from, connecting if necessary
+     */
+    public InetAddress getLocalAddress(String location) throws IOException {
+        if (getHealthState(location) == YeelightLocationHealth.State.OFFLINE) {
+            throw new YeelightOfflineException(location);
+        }
+        return getConnection(location).getLocalAddress();
+    }
+
+    /**
+     * @return the address of the device at the location or null if not connected
+     */
+    public InetAddress getRemoteAddress(String location) {
+        YeelightConnection connection = connections.get(location);
+        return connection != null ? connection.getRemoteAddress() : null;
+    }
+
+    public boolean isConnected(String location) {
+        YeelightConnection connection = connections.get(location);
+        return connection != null && connection.isConnected();
+    }
+
+    public void close(String location) {
+        YeelightConnection connection = connections.remove(location);
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    public void closeAll() {
+        for (YeelightConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+        healths.clear();
+    }
+}
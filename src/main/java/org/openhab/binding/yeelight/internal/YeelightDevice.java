@@ -1,29 +1,32 @@
 package org.openhab.binding.yeelight.internal;
 
+import java.net.InetSocketAddress;
+
 /**
  * Created by Ondřej Pečta on 25. 12. 2016.
- * intended for future use...
+ * A device found by the discovery, kept up to date by its advertisements.
  */
 public class YeelightDevice {
-    private String id;
-    private String location;
-    private String model;
-    private String support;
+    private final String id;
+    private volatile String location;
+    private volatile InetSocketAddress address;
+    private volatile String model;
+    private volatile String support;
+    private volatile long expiryTime;
 
     public String getId() {
         return id;
     }
 
-    public void setId(String id) {
-        this.id = id;
-    }
-
+    /**
+     * @return the location in ip:port format
+     */
     public String getLocation() {
         return location;
     }
 
-    public void setLocation(String location) {
-        this.location = location;
+    public InetSocketAddress getAddress() {
+        return address;
     }
 
     public String getModel() {
@@ -42,11 +45,36 @@ public class YeelightDevice {
         this.support = support;
     }
 
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(long expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiryTime;
+    }
+
+    /**
+     * @return true if the location changed
+     */
+    public synchronized boolean setLocation(String location) {
+        if (location.equals(this.location)) {
+            return false;
+        }
+        int index = location.lastIndexOf(":");
+        this.address = InetSocketAddress.createUnresolved(location.substring(0, index), Integer.parseInt(location.substring(index + 1)));
+        this.location = location;
+        return true;
+    }
+
     public YeelightDevice(String id, String location, String model, String support) {
         this.id = id;
-        this.location = location;
         this.model = model;
         this.support = support;
+        setLocation(location);
     }
 
     @Override
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The devices found by the discovery keyed by their device id. Every
+ * advertisement refreshes the entry of its device, entries which are not
+ * advertised again within the SSDP max-age are evicted.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightDeviceRegistry {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(YeelightDeviceRegistry.class);
+    private static final int DEFAULT_MAX_AGE = 3600;
+
+    interface Listener {
+        void deviceAdded(YeelightDevice device);
+
+        void deviceMoved(YeelightDevice device);
+
+        void deviceRemoved(YeelightDevice device);
+    }
+
+    private final ConcurrentMap<String, YeelightDevice> devices = new ConcurrentHashMap<>();
+    private final Listener listener;
+
+    YeelightDeviceRegistry(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the live device or null if the device is unknown or expired
+     */
+    public YeelightDevice get(String id) {
+        YeelightDevice device = devices.get(id);
+        return device != null && !device.isExpired(System.currentTimeMillis()) ? device : null;
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    /**
+     * Adds or refreshes the device of an advertisement.
+     */
+    public void update(YeelightSsdpMessage message) {
+        String id = message.getString(YeelightSsdpMessage.ID);
+        String location = message.getLocation();
+        if (id.isEmpty() || location == null) {
+            return;
+        }
+        int maxAge = message.getMaxAge();
+        long expiryTime = System.currentTimeMillis() + 1000L * (maxAge > 0 ? maxAge : DEFAULT_MAX_AGE);
+
+        YeelightDevice device = devices.get(id);
+        if (device == null) {
+            device = new YeelightDevice(id, location, message.getString(YeelightSsdpMessage.MODEL),
+                    message.getString(YeelightSsdpMessage.SUPPORT));
+            device.setExpiryTime(expiryTime);
+            if (devices.putIfAbsent(id, device) == null) {
+                listener.deviceAdded(device);
+            }
+            return;
+        }
+        device.setExpiryTime(expiryTime);
+        if (device.setLocation(location)) {
+            device.setModel(message.getString(YeelightSsdpMessage.MODEL));
+            device.setSupport(message.getString(YeelightSsdpMessage.SUPPORT));
+            listener.deviceMoved(device);
+        }
+    }
+
+    /**
+     * Removes the devices whose advertisement expired.
+     */
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<YeelightDevice> iterator = devices.values().iterator();
+        while (iterator.hasNext()) {
+            YeelightDevice device = iterator.next();
+            if (device.isExpired(now)) {
+                iterator.remove();
+                logger.debug("Yeelight device {} expired", device.getId());
+                listener.deviceRemoved(device);
+            }
+        }
+    }
+
+    public void clear() {
+        devices.clear();
+    }
+}
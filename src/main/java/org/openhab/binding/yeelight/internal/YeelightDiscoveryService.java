@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.Iterator;
+
+/**
+ * Discovers Yeelight devices by SSDP. A single thread waits on a selector for
+ * search responses (received on an ephemeral port) and NOTIFY advertisements
+ * (received on the multicast group). After an I/O error the channels are
+ * reopened with a growing delay until {@link #stop()} is called.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightDiscoveryService implements Runnable {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(YeelightDiscoveryService.class);
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final String MCAST_ADDR = "239.255.255.250";
+    private static final int MCAST_PORT = 1982;
+    private static final int BUFFER_LENGTH = 1024;
+    private static final long MIN_REOPEN_DELAY = 1000;
+    private static final long MAX_REOPEN_DELAY = 60000;
+
+    private static final ByteBuffer SEARCH = ByteBuffer.wrap(("M-SEARCH * HTTP/1.1\r\n"
+            + "HOST: " + MCAST_ADDR + ":" + MCAST_PORT + "\r\n"
+            + "MAN: \"ssdp:discover\"\r\n"
+            + "ST: wifi_bulb\r\n").getBytes(CHARSET));
+
+    interface Listener {
+        /**
+         * Called on the discovery thread, the message is reused afterwards.
+         */
+        void advertisementReceived(YeelightSsdpMessage message);
+    }
+
+    private final Listener listener;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_LENGTH);
+    private final YeelightSsdpMessage message = new YeelightSsdpMessage();
+
+    private volatile boolean running = false;
+    private Thread thread;
+    private volatile Selector selector;
+    private volatile DatagramChannel searchChannel;
+    private DatagramChannel notifyChannel;
+
+    YeelightDiscoveryService(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Yeelight discovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            Selector current = selector;
+            if (current != null) {
+                current.wakeup();
+            }
+            thread.interrupt();
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Sends a M-SEARCH request, the responses are received asynchronously.
+     */
+    public void discover() {
+        DatagramChannel channel = searchChannel;
+        if (channel == null) {
+            logger.debug("Yeelight discovery is not ready");
+            return;
+        }
+        try {
+            channel.send(SEARCH.duplicate(), new InetSocketAddress(InetAddress.getByName(MCAST_ADDR), MCAST_PORT));
+        } catch (IOException e) {
+            logger.error("Cannot send Yeelight discovery request: {}", e.toString());
+        }
+    }
+
+    public void run() {
+        long delay = MIN_REOPEN_DELAY;
+        while (running) {
+            try {
+                open();
+                delay = MIN_REOPEN_DELAY;
+                receive();
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Yeelight discovery failed, reopening in {}ms: {}", delay, e.toString());
+                }
+            } finally {
+                closeChannels();
+            }
+            if (running) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                delay = Math.min(delay * 2, MAX_REOPEN_DELAY);
+            }
+        }
+        logger.debug("Yeelight discovery stopped");
+    }
+
+    private void open() throws IOException {
+        selector = Selector.open();
+
+        DatagramChannel search = DatagramChannel.open(StandardProtocolFamily.INET);
+        search.bind(new InetSocketAddress(0));
+        search.configureBlocking(false);
+        search.register(selector, SelectionKey.OP_READ);
+        searchChannel = search;
+
+        try {
+            notifyChannel = openNotifyChannel();
+        } catch (IOException e) {
+            logger.warn("Cannot listen to Yeelight advertisements on port {}: {}", MCAST_PORT, e.toString());
+        }
+    }
+
+    private DatagramChannel openNotifyChannel() throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(MCAST_PORT));
+            InetAddress group = InetAddress.getByName(MCAST_ADDR);
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                NetworkInterface networkInterface = interfaces.nextElement();
+                if (networkInterface.isUp() && networkInterface.supportsMulticast()) {
+                    try {
+                        channel.join(group, networkInterface);
+                    } catch (IOException e) {
+                        logger.debug("Cannot join {} on {}: {}", MCAST_ADDR, networkInterface.getName(), e.toString());
+                    }
+                }
+            }
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void receive() throws IOException {
+        while (running) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid() || !key.isReadable()) {
+                    continue;
+                }
+                DatagramChannel channel = (DatagramChannel) key.channel();
+                //drain all queued packets
+                while (true) {
+                    buffer.clear();
+                    if (channel.receive(buffer) == null) {
+                        break;
+                    }
+                    buffer.flip();
+                    process();
+                }
+            }
+        }
+    }
+
+    private void process() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Yeelight received packet: {}", new String(buffer.array(), 0, buffer.limit(), CHARSET));
+        }
+        if (!message.parse(buffer)) {
+            return;
+        }
+        try {
+            listener.advertisementReceived(message);
+        } catch (RuntimeException e) {
+            logger.error("Cannot process Yeelight advertisement", e);
+        }
+    }
+
+    private void closeChannels() {
+        searchChannel = null;
+        close(notifyChannel);
+        notifyChannel = null;
+        if (selector != null) {
+            for (SelectionKey key : selector.keys()) {
+                close(key.channel());
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                //silence
+            }
+            selector = null;
+        }
+    }
+
+    private void close(Channel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //silence
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A color flow compiled into the parameters of a start_cf request, so the
+ * whole animation runs on the device. A flow is defined by entries separated
+ * by ';', the keyframes are run in order:
+ * <ul>
+ * <li>rgb &lt;RRGGBB&gt; &lt;brightness&gt; &lt;duration&gt;
+ * <li>hsb &lt;hue&gt;,&lt;saturation&gt; &lt;brightness&gt; &lt;duration&gt;
+ * <li>ct &lt;kelvin&gt; &lt;brightness&gt; &lt;duration&gt;
+ * <li>sleep &lt;duration&gt;
+ * <li>repeat &lt;count&gt; - runs of the keyframes, 0 is forever (defaults to 1)
+ * <li>end recover|stay|off - the state after the last run (defaults to recover)
+ * </ul>
+ * A brightness of -1 keeps the current brightness, durations are in milliseconds.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+final class YeelightFlow {
+
+    //flows which are available without configuration, a configured flow of the same name replaces them
+    static final Map<String, String> PRESETS;
+
+    static {
+        Map<String, String> presets = new LinkedHashMap<>();
+        presets.put("sunrise", "end stay; ct 1700 1 50; rgb ff4000 10 120000; ct 2700 60 300000; ct 4000 100 600000");
+        presets.put("sunset", "end off; ct 2700 60 50; rgb ff4000 10 300000; ct 1700 1 300000");
+        presets.put("breathing", "repeat 0; ct 4000 100 2000; ct 4000 1 2000");
+        presets.put("colorcycle", "repeat 0; hsb 0,100 100 4000; hsb 120,100 100 4000; hsb 240,100 100 4000");
+        PRESETS = Collections.unmodifiableMap(presets);
+    }
+
+    static final int MIN_DURATION = 50;
+    static final int MIN_CT = 1700;
+    static final int MAX_CT = 6500;
+
+    //flow expression modes
+    private static final int MODE_COLOR = 1;
+    private static final int MODE_CT = 2;
+    private static final int MODE_SLEEP = 7;
+
+    //start_cf actions after the last state change
+    private static final String[] END_ACTIONS = {"recover", "stay", "off"};
+
+    private final String name;
+    private final Object[] params;
+
+    private YeelightFlow(String name, Object[] params) {
+        this.name = name;
+        this.params = params;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the parameters of the start_cf request, shared by all starts of the flow
+     */
+    public Object[] getParams() {
+        return params;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the definition is not valid
+     */
+    static YeelightFlow compile(String name, String definition) {
+        StringBuilder expression = new StringBuilder();
+        int keyframes = 0;
+        int repeat = 1;
+        int end = 0;
+
+        for (String entry : StringUtils.split(definition, ';')) {
+            String[] words = StringUtils.split(entry);
+            if (words.length == 0)
+                continue;
+            String type = words[0];
+            if (type.equals("repeat")) {
+                expectWords(words, 2, entry);
+                repeat = parseInt(words[1], 0, Integer.MAX_VALUE, entry);
+                continue;
+            }
+            if (type.equals("end")) {
+                expectWords(words, 2, entry);
+                end = indexOf(END_ACTIONS, words[1], entry);
+                continue;
+            }
+
+            int mode;
+            int value;
+            int brightness;
+            int duration;
+            if (type.equals("sleep")) {
+                expectWords(words, 2, entry);
+                mode = MODE_SLEEP;
+                value = 0;
+                brightness = 0;
+                duration = parseInt(words[1], MIN_DURATION, Integer.MAX_VALUE, entry);
+            } else {
+                expectWords(words, 4, entry);
+                if (type.equals("rgb")) {
+                    mode = MODE_COLOR;
+                    value = parseHex(words[1], entry);
+                } else if (type.equals("hsb")) {
+                    String[] hs = StringUtils.split(words[1], ',');
+                    if (hs.length != 2)
+                        throw new IllegalArgumentException("expected <hue>,<saturation> in '" + entry.trim() + "'");
+                    mode = MODE_COLOR;
+                    //the brightness of the keyframe applies to the full color
+                    value = YeelightColor.fromHSB(parseInt(hs[0], 0, 359, entry), parseInt(hs[1], 0, 100, entry), 100);
+                } else if (type.equals("ct")) {
+                    mode = MODE_CT;
+                    value = parseInt(words[1], MIN_CT, MAX_CT, entry);
+                } else {
+                    throw new IllegalArgumentException("unknown entry '" + entry.trim() + "'");
+                }
+                brightness = words[2].equals("-1") ? -1 : parseInt(words[2], 1, 100, entry);
+                duration = parseInt(words[3], MIN_DURATION, Integer.MAX_VALUE, entry);
+            }
+
+            if (expression.length() > 0)
+                expression.append(',');
+            expression.append(duration).append(',').append(mode).append(',').append(value).append(',').append(brightness);
+            keyframes++;
+        }
+
+        if (keyframes == 0)
+            throw new IllegalArgumentException("no keyframes");
+        //the count of start_cf is the number of state changes, 0 runs forever
+        long count = (long) repeat * keyframes;
+        if (count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("repeat " + repeat + " is too large");
+        return new YeelightFlow(name, new Object[]{(int) count, end, expression.toString()});
+    }
+
+    private static void expectWords(String[] words, int count, String entry) {
+        if (words.length != count)
+            throw new IllegalArgumentException("expected " + count + " values in '" + entry.trim() + "'");
+    }
+
+    private static int parseInt(String value, int min, int max, String entry) {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid number '" + value + "' in '" + entry.trim() + "'");
+        }
+        if (result < min || result > max)
+            throw new IllegalArgumentException(value + " is out of range in '" + entry.trim() + "'");
+        return result;
+    }
+
+    private static int parseHex(String value, String entry) {
+        boolean valid = value.length() == 6;
+        for (int i = 0; valid && i < value.length(); i++) {
+            valid = Character.digit(value.charAt(i), 16) >= 0;
+        }
+        if (!valid)
+            throw new IllegalArgumentException("expected RRGGBB in '" + entry.trim() + "'");
+        return Integer.parseInt(value, 16);
+    }
+
+    private static int indexOf(String[] values, String value, String entry) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value))
+                return i;
+        }
+        throw new IllegalArgumentException("expected one of " + StringUtils.join(values, '|') + " in '" + entry.trim() + "'");
+    }
+}
@@ -8,6 +8,7 @@
  */
 package org.openhab.binding.yeelight.internal;
 
+import org.openhab.binding.yeelight.YeelightAction;
 import org.openhab.binding.yeelight.YeelightBindingProvider;
 import org.openhab.core.items.Item;
 import org.openhab.core.library.items.ColorItem;
@@ -16,6 +17,13 @@ import org.openhab.core.library.items.SwitchItem;
 import org.openhab.model.item.binding.AbstractGenericBindingProvider;
 import org.openhab.model.item.binding.BindingConfigParseException;
 
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 
 /**
  * This class is responsible for parsing the binding configuration.
@@ -25,6 +33,9 @@ import org.openhab.model.item.binding.BindingConfigParseException;
  */
 public class YeelightGenericBindingProvider extends AbstractGenericBindingProvider implements YeelightBindingProvider {
 
+	//location -> action -> item names
+	private final Map<String, Map<YeelightAction, Set<String>>> locationIndex = new ConcurrentHashMap<>();
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -49,6 +60,23 @@ public class YeelightGenericBindingProvider extends AbstractGenericBindingProvid
 		return config;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Collection<String> getLocations() {
+		return Collections.unmodifiableSet(locationIndex.keySet());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<YeelightAction, Set<String>> getItemNamesByAction(String location) {
+		Map<YeelightAction, Set<String>> actions = locationIndex.get(location);
+		return actions != null ? Collections.unmodifiableMap(actions) : Collections.<YeelightAction, Set<String>>emptyMap();
+	}
+
 	/*
 	public String getItemLocation(String itemName) {
 		final YeelightBindingConfig config = (YeelightBindingConfig) this.bindingConfigs.get(itemName);
@@ -66,22 +94,98 @@ public class YeelightGenericBindingProvider extends AbstractGenericBindingProvid
 	@Override
 	public void processBindingConfiguration(String context, Item item, String bindingConfig) throws BindingConfigParseException {
 		super.processBindingConfiguration(context, item, bindingConfig);
-		String type = bindingConfig;
-		String command = "set_power";
+		String type = bindingConfig.trim();
+		String command = YeelightAction.SET_POWER.getName();
 
-		if(bindingConfig.contains("#"))
+		if(type.contains("#"))
 		{
-		    int pos = bindingConfig.indexOf("#");
-			type = bindingConfig.substring(0, pos);
-			command = bindingConfig.substring(pos + 1);
+		    int pos = type.indexOf("#");
+			command = type.substring(pos + 1);
+			type = type.substring(0, pos);
+		}
+
+		String parameter = null;
+		if (command.contains(":")) {
+			int pos = command.indexOf(":");
+			parameter = command.substring(pos + 1);
+			command = command.substring(0, pos);
 		}
 
+		YeelightAction action = YeelightAction.fromName(command);
+		if (action == null) {
+			throw new BindingConfigParseException("item '" + item.getName()
+					+ "' has unknown Yeelight action '" + command + "'");
+		}
+		if (action == YeelightAction.FLOW && (parameter == null || parameter.isEmpty())) {
+			throw new BindingConfigParseException("item '" + item.getName()
+					+ "' has no Yeelight flow name, expected flow:<name>");
+		}
 
-		YeelightBindingConfig config = new YeelightBindingConfig(type, command);
-		
-		//parse bindingconfig here ...
+		//devices bound by id are resolved through the discovery, groups are expanded by the binding
+		InetSocketAddress address = YeelightBindingConfig.isDeviceId(type) || YeelightBindingConfig.isGroup(type)
+				? null : parseAddress(item, type);
+		YeelightBindingConfig config = new YeelightBindingConfig(type, action, parameter, address);
 
+		unindex(item.getName());
 		addBindingConfig(item, config);
+		index(item.getName(), config);
+	}
+
+	private InetSocketAddress parseAddress(Item item, String location) throws BindingConfigParseException {
+		try {
+			return YeelightBindingConfig.parseAddress(location);
+		} catch (IllegalArgumentException e) {
+			throw new BindingConfigParseException("item '" + item.getName() + "' has " + e.getMessage());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void removeConfigurations(String context) {
+		Set<Item> items = contextMap.get(context);
+		if (items != null) {
+			for (Item item : items) {
+				unindex(item.getName());
+			}
+		}
+		super.removeConfigurations(context);
+	}
+
+	private synchronized void index(String itemName, YeelightBindingConfig config) {
+		Map<YeelightAction, Set<String>> actions = locationIndex.get(config.getLocation());
+		if (actions == null) {
+			actions = new ConcurrentHashMap<>();
+			locationIndex.put(config.getLocation(), actions);
+		}
+		Set<String> itemNames = actions.get(config.getAction());
+		if (itemNames == null) {
+			itemNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			actions.put(config.getAction(), itemNames);
+		}
+		itemNames.add(itemName);
+	}
+
+	private synchronized void unindex(String itemName) {
+		YeelightBindingConfig config = getItemConfig(itemName);
+		if (config == null) {
+			return;
+		}
+		Map<YeelightAction, Set<String>> actions = locationIndex.get(config.getLocation());
+		if (actions == null) {
+			return;
+		}
+		Set<String> itemNames = actions.get(config.getAction());
+		if (itemNames != null) {
+			itemNames.remove(itemName);
+			if (itemNames.isEmpty()) {
+				actions.remove(config.getAction());
+			}
+		}
+		if (actions.isEmpty()) {
+			locationIndex.remove(config.getLocation());
+		}
 	}
 
 }
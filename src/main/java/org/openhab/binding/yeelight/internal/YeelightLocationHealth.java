@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+/**
+ * Tracks the reachability of a single Yeelight location and acts as a circuit
+ * breaker: once a location is considered offline, requests are rejected
+ * without touching the network and only a single probe is let through after
+ * an exponentially growing backoff.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightLocationHealth {
+
+    enum State {
+        HEALTHY, SUSPECT, OFFLINE
+    }
+
+    private static final int OFFLINE_THRESHOLD = 2;
+    private static final long MIN_BACKOFF = 5000;
+    private static final long MAX_BACKOFF = 300000;
+
+    private State state = State.HEALTHY;
+    private int failures = 0;
+    private long backoff = 0;
+    private long nextProbeTime = 0;
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns true if a request may be sent. While offline this grants at most one
+     * probe per backoff period.
+     */
+    public synchronized boolean allowRequest() {
+        if (state != State.OFFLINE) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now < nextProbeTime) {
+            return false;
+        }
+        backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        nextProbeTime = now + backoff;
+        return true;
+    }
+
+    /**
+     * @return the previous state
+     */
+    public synchronized State success() {
+        State previous = state;
+        state = State.HEALTHY;
+        failures = 0;
+        backoff = 0;
+        nextProbeTime = 0;
+        return previous;
+    }
+
+    /**
+     * @return the previous state
+     */
+    public synchronized State failure() {
+        State previous = state;
+        failures++;
+        if (state != State.OFFLINE) {
+            if (failures >= OFFLINE_THRESHOLD) {
+                state = State.OFFLINE;
+                backoff = MIN_BACKOFF;
+                nextProbeTime = System.currentTimeMillis() + backoff;
+            } else {
+                state = State.SUSPECT;
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * The device announced itself (e.g. by a SSDP NOTIFY), so an offline location
+     * is probed again right away.
+     *
+     * @return the previous state
+     */
+    public synchronized State seen() {
+        State previous = state;
+        if (state == State.OFFLINE) {
+            state = State.SUSPECT;
+            failures = OFFLINE_THRESHOLD - 1;
+            backoff = 0;
+            nextProbeTime = 0;
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Round trip latency histogram and error count of a location. Recording only
+ * increments atomic counters, so it never blocks the connection threads.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightLocationMetrics implements YeelightLocationMetricsMXBean {
+
+    //upper bounds of the histogram buckets in milliseconds, the last bucket is unbounded
+    private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final String location;
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong latencySum = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile String health = YeelightLocationHealth.State.HEALTHY.toString();
+
+    YeelightLocationMetrics(String location) {
+        this.location = location;
+    }
+
+    void recordLatency(long millis) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        latencySum.addAndGet(millis);
+        long max = maxLatency.get();
+        while (millis > max && !maxLatency.compareAndSet(max, millis)) {
+            max = maxLatency.get();
+        }
+    }
+
+    void recordError() {
+        errors.incrementAndGet();
+    }
+
+    void setHealth(YeelightLocationHealth.State state) {
+        health = state.toString();
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getHealth() {
+        return health;
+    }
+
+    public long getRequests() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public double getMeanLatency() {
+        long count = getRequests();
+        return count > 0 ? (double) latencySum.get() / count : 0;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    public long getLatency50() {
+        return getPercentile(0.5);
+    }
+
+    public long getLatency95() {
+        return getPercentile(0.95);
+    }
+
+    public long getLatency99() {
+        return getPercentile(0.99);
+    }
+
+    private long getPercentile(double percentile) {
+        long count = getRequests();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return BOUNDS[i];
+            }
+        }
+        return maxLatency.get();
+    }
+
+    public Map<String, Long> getLatencyHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BOUNDS.length; i++) {
+            histogram.put("<=" + BOUNDS[i], buckets.get(i));
+        }
+        histogram.put(">" + BOUNDS[BOUNDS.length - 1], buckets.get(BOUNDS.length));
+        return histogram;
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        latencySum.set(0);
+        maxLatency.set(0);
+        errors.set(0);
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.util.Map;
+
+/**
+ * Request metrics of a single location exposed over JMX, latencies are in milliseconds.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+public interface YeelightLocationMetricsMXBean {
+
+    String getLocation();
+
+    String getHealth();
+
+    long getRequests();
+
+    long getErrors();
+
+    double getMeanLatency();
+
+    long getMaxLatency();
+
+    /**
+     * @return the upper bound of the latency histogram bucket of the 50th percentile
+     */
+    long getLatency50();
+
+    long getLatency95();
+
+    long getLatency99();
+
+    /**
+     * @return the request counts of the latency histogram buckets, keyed by their upper bound
+     */
+    Map<String, Long> getLatencyHistogram();
+
+    void reset();
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the metrics of the binding and publishes them as MXBeans: one for
+ * the binding and one for every location which was sent a request. Recording
+ * uses atomic counters only.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightMetrics implements YeelightMetricsMXBean {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(YeelightMetrics.class);
+    private static final String DOMAIN = "org.openhab.binding.yeelight";
+    private static final long RATE_WINDOW = 60000;
+
+    private final YeelightDeviceRegistry deviceRegistry;
+    private final ConcurrentMap<String, YeelightLocationMetrics> locations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> successes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+    private final AtomicLong pollCycles = new AtomicLong();
+    private final AtomicLong pollTimeouts = new AtomicLong();
+    private final AtomicLong maxPollCycleDuration = new AtomicLong();
+    private volatile long lastPollCycleDuration;
+
+    private final AtomicLong discoveryPackets = new AtomicLong();
+    private volatile long rateWindowStart = System.currentTimeMillis();
+    private volatile long rateWindowPackets;
+    private volatile long discoveryPacketsPerMinute;
+
+    private volatile MBeanServer server;
+
+    YeelightMetrics(YeelightDeviceRegistry deviceRegistry) {
+        this.deviceRegistry = deviceRegistry;
+    }
+
+    /**
+     * Publishes the binding MXBean and the MXBeans of the locations known so far.
+     */
+    public synchronized void register() {
+        server = ManagementFactory.getPlatformMBeanServer();
+        register(objectName("type=Binding"), this);
+        for (YeelightLocationMetrics metrics : locations.values()) {
+            register(locationName(metrics.getLocation()), metrics);
+        }
+    }
+
+    public synchronized void unregister() {
+        MBeanServer current = server;
+        server = null;
+        if (current == null) {
+            return;
+        }
+        try {
+            for (ObjectName name : current.queryNames(new ObjectName(DOMAIN + ":*"), null)) {
+                current.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.debug("Cannot unregister Yeelight metrics: {}", e.toString());
+        }
+    }
+
+    void requestCompleted(String location, String method, long millis, boolean error) {
+        YeelightLocationMetrics metrics = getLocationMetrics(location);
+        metrics.recordLatency(millis);
+        if (error) {
+            metrics.recordError();
+        }
+        increment(error ? errors : successes, method);
+    }
+
+    void requestFailed(String location, String method) {
+        getLocationMetrics(location).recordError();
+        increment(errors, method);
+    }
+
+    void healthChanged(String location, YeelightLocationHealth.State state) {
+        getLocationMetrics(location).setHealth(state);
+    }
+
+    void pollCycleCompleted(long millis, int timedOut) {
+        pollCycles.incrementAndGet();
+        pollTimeouts.addAndGet(timedOut);
+        lastPollCycleDuration = millis;
+        long max = maxPollCycleDuration.get();
+        while (millis > max && !maxPollCycleDuration.compareAndSet(max, millis)) {
+            max = maxPollCycleDuration.get();
+        }
+    }
+
+    void advertisementReceived() {
+        discoveryPackets.incrementAndGet();
+    }
+
+    /**
+     * Closes the discovery rate window once a minute, called from the refresh thread.
+     */
+    void updateRates(long now) {
+        if (now - rateWindowStart >= RATE_WINDOW) {
+            long packets = discoveryPackets.get();
+            discoveryPacketsPerMinute = (packets - rateWindowPackets) * RATE_WINDOW / (now - rateWindowStart);
+            rateWindowPackets = packets;
+            rateWindowStart = now;
+        }
+    }
+
+    private YeelightLocationMetrics getLocationMetrics(String location) {
+        YeelightLocationMetrics metrics = locations.get(location);
+        if (metrics == null) {
+            YeelightLocationMetrics newMetrics = new YeelightLocationMetrics(location);
+            metrics = locations.putIfAbsent(location, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+                register(locationName(location), metrics);
+            }
+        }
+        return metrics;
+    }
+
+    private static void increment(ConcurrentMap<String, AtomicLong> counters, String method) {
+        AtomicLong counter = counters.get(method);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(method, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    private void register(ObjectName name, Object bean) {
+        MBeanServer current = server;
+        if (current == null || name == null) {
+            return;
+        }
+        try {
+            if (current.isRegistered(name)) {
+                current.unregisterMBean(name);
+            }
+            current.registerMBean(bean, name);
+        } catch (JMException e) {
+            logger.debug("Cannot register Yeelight metrics {}: {}", name, e.toString());
+        }
+    }
+
+    private static ObjectName locationName(String location) {
+        return objectName("type=Location,name=" + ObjectName.quote(location));
+    }
+
+    private static ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (JMException e) {
+            return null;
+        }
+    }
+
+    public long getPollCycles() {
+        return pollCycles.get();
+    }
+
+    public long getLastPollCycleDuration() {
+        return lastPollCycleDuration;
+    }
+
+    public long getMaxPollCycleDuration() {
+        return maxPollCycleDuration.get();
+    }
+
+    public long getPollTimeouts() {
+        return pollTimeouts.get();
+    }
+
+    public long getDiscoveryPackets() {
+        return discoveryPackets.get();
+    }
+
+    public long getDiscoveryPacketsPerMinute() {
+        return discoveryPacketsPerMinute;
+    }
+
+    public int getRegisteredDevices() {
+        return deviceRegistry.size();
+    }
+
+    public Map<String, Long> getRequestSuccesses() {
+        return snapshot(successes);
+    }
+
+    public Map<String, Long> getRequestErrors() {
+        return snapshot(errors);
+    }
+
+    private static Map<String, Long> snapshot(Map<String, AtomicLong> counters) {
+        Map<String, Long> snapshot = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        successes.clear();
+        errors.clear();
+        pollCycles.set(0);
+        pollTimeouts.set(0);
+        maxPollCycleDuration.set(0);
+        lastPollCycleDuration = 0;
+        for (YeelightLocationMetrics metrics : locations.values()) {
+            metrics.reset();
+        }
+    }
+}
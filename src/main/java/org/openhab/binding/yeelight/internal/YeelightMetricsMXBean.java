@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.util.Map;
+
+/**
+ * Binding wide metrics exposed over JMX.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+public interface YeelightMetricsMXBean {
+
+    long getPollCycles();
+
+    long getLastPollCycleDuration();
+
+    long getMaxPollCycleDuration();
+
+    long getPollTimeouts();
+
+    long getDiscoveryPackets();
+
+    long getDiscoveryPacketsPerMinute();
+
+    int getRegisteredDevices();
+
+    /**
+     * @return the number of successful requests by method
+     */
+    Map<String, Long> getRequestSuccesses();
+
+    /**
+     * @return the number of failed requests (error responses, timeouts, connection failures) by method
+     */
+    Map<String, Long> getRequestErrors();
+
+    void reset();
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TCP server devices in music mode connect back to. After set_music the
+ * device opens a connection to this server and accepts commands over it
+ * without any rate limit and without responding to them.
+ * <p>
+ * A connection is assigned to the location which expects a device with the
+ * remote address of the connection. When the device closes the connection or
+ * writing to it fails, it is closed and the listener is told the location is
+ * back in normal mode.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightMusicServer implements Runnable {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(YeelightMusicServer.class);
+
+    interface Listener {
+        /**
+         * Called when the music connection of a location is lost.
+         */
+        void musicModeClosed(String location);
+    }
+
+    private final Listener listener;
+    private final AtomicLong nextId = new AtomicLong();
+
+    //device address -> location waiting for its connection
+    private final ConcurrentMap<InetAddress, String> expected = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, MusicSession> sessions = new ConcurrentHashMap<>();
+
+    private ServerSocket serverSocket;
+
+    YeelightMusicServer(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Opens the server socket unless it is open already.
+     *
+     * @param port the port to listen on, 0 for any free port
+     * @return the port the server listens on
+     */
+    public synchronized int start(int port) throws IOException {
+        if (serverSocket == null || serverSocket.isClosed()) {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(port));
+            Thread thread = new Thread(this, "Yeelight music server");
+            thread.setDaemon(true);
+            thread.start();
+            logger.debug("Music server listening on port {}", serverSocket.getLocalPort());
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized void stop() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                //silence
+            }
+            serverSocket = null;
+        }
+        expected.clear();
+        for (String location : sessions.keySet()) {
+            //removed first, so the closed session does not notify the listener
+            MusicSession session = sessions.remove(location);
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Waits for the device of the location to connect from the address.
+     */
+    public void expect(String location, InetAddress address) {
+        expected.put(address, location);
+    }
+
+    public boolean isActive(String location) {
+        return sessions.containsKey(location);
+    }
+
+    /**
+     * Sends a command over the music connection of the location.
+     *
+     * @return false if the location has no music connection or writing failed
+     */
+    public boolean send(String location, String method, Object[] params) {
+        MusicSession session = sessions.get(location);
+        if (session == null) {
+            return false;
+        }
+        try {
+            session.write(nextId.incrementAndGet(), method, params);
+            return true;
+        } catch (IOException e) {
+            logger.debug("Music connection of {} failed: {}", location, e.toString());
+            closed(location, session);
+            return false;
+        }
+    }
+
+    private void closed(String location, MusicSession session) {
+        if (sessions.remove(location, session)) {
+            session.close();
+            listener.musicModeClosed(location);
+        }
+    }
+
+    /**
+     * Closes the music connection of the location without notifying the listener.
+     */
+    public void close(String location) {
+        MusicSession session = sessions.remove(location);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    public void run() {
+        ServerSocket server;
+        synchronized (this) {
+            server = serverSocket;
+        }
+        while (server != null && !server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                String location = expected.remove(socket.getInetAddress());
+                if (location == null) {
+                    logger.debug("Unexpected music connection from {}", socket.getInetAddress());
+                    socket.close();
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                MusicSession session = new MusicSession(location, socket);
+                MusicSession previous = sessions.put(location, session);
+                if (previous != null) {
+                    previous.close();
+                }
+                session.start();
+                logger.info("Location {} is in music mode", location);
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    logger.debug("Music server error: {}", e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * A music connection. The device never writes to it, so its reader only
+     * waits for the end of the stream to notice a dropped connection before
+     * a command is written to it.
+     */
+    private class MusicSession implements Runnable {
+        private final String location;
+        private final Socket socket;
+        private final InputStream input;
+        private final OutputStream output;
+        private final ByteArrayOutputStream request = new ByteArrayOutputStream(128);
+
+        MusicSession(String location, Socket socket) throws IOException {
+            this.location = location;
+            this.socket = socket;
+            this.input = socket.getInputStream();
+            this.output = socket.getOutputStream();
+        }
+
+        void start() {
+            Thread thread = new Thread(this, "Yeelight music reader " + location);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public void run() {
+            byte[] buffer = new byte[256];
+            try {
+                while (input.read(buffer) >= 0) {
+                    //nothing is expected from the device
+                }
+                logger.debug("Music connection of {} closed by the device", location);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    logger.debug("Music connection of {} failed: {}", location, e.toString());
+                }
+            }
+            closed(location, this);
+        }
+
+        synchronized void write(long id, String method, Object[] params) throws IOException {
+            request.reset();
+            YeelightCodec.encodeRequest(request, id, method, params);
+            request.writeTo(output);
+            output.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //silence
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+/**
+ * Receives the unsolicited messages (e.g. "props") a Yeelight device pushes
+ * over an open control connection and the health changes of the locations.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+interface YeelightNotificationListener {
+
+    void notificationReceived(String location, String notification);
+
+    void healthChanged(String location, YeelightLocationHealth.State state);
+
+}
@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of contacting a location which is known to be offline.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightOfflineException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    YeelightOfflineException(String location) {
+        super("Location " + location + " is offline");
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps the next poll time of every location. A location is polled at the
+ * floor interval after a command or a detected change and the interval doubles
+ * with every poll which finds nothing new, up to the ceiling interval which is
+ * also used for failing locations. The poll times are jittered so the
+ * locations do not line up on the same tick.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightPollScheduler {
+
+    static final long DEFAULT_MIN_REFRESH = 5000;
+    static final long DEFAULT_MAX_REFRESH = 300000;
+
+    private static class Schedule {
+        volatile long interval;
+        volatile long nextPollTime;
+        //poll time which confirms a command or a change, Long.MAX_VALUE if there is none
+        volatile long confirmTime = Long.MAX_VALUE;
+    }
+
+    private final ConcurrentMap<String, Schedule> schedules = new ConcurrentHashMap<>();
+    private volatile long minInterval = DEFAULT_MIN_REFRESH;
+    private volatile long maxInterval = DEFAULT_MAX_REFRESH;
+
+    public void setIntervals(long minInterval, long maxInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+    }
+
+    /**
+     * @return true if the location has never been polled or its poll time has come
+     */
+    public boolean isDue(String location, long now) {
+        Schedule schedule = schedules.get(location);
+        return schedule == null || now >= schedule.nextPollTime;
+    }
+
+    /**
+     * @return true if a command or a change of the location waits for its confirming poll
+     * and its time has come
+     */
+    public boolean isConfirmationDue(String location, long now) {
+        Schedule schedule = schedules.get(location);
+        return schedule != null && now >= schedule.confirmTime;
+    }
+
+    /**
+     * Called after a successful poll, polls again soon if the state changed
+     * and backs off otherwise.
+     */
+    public void polled(String location, boolean changed) {
+        Schedule schedule = getSchedule(location);
+        synchronized (schedule) {
+            schedule.interval = changed ? minInterval : Math.min(schedule.interval * 2, maxInterval);
+            schedule.confirmTime = Long.MAX_VALUE;
+            reschedule(schedule);
+        }
+    }
+
+    /**
+     * Called after a failed poll, the location is polled at the ceiling interval.
+     */
+    public void failed(String location) {
+        Schedule schedule = getSchedule(location);
+        synchronized (schedule) {
+            schedule.interval = maxInterval;
+            schedule.confirmTime = Long.MAX_VALUE;
+            reschedule(schedule);
+        }
+    }
+
+    /**
+     * Called after a command or an unsolicited state change, the location is
+     * polled after the floor interval.
+     */
+    public void activity(String location) {
+        Schedule schedule = getSchedule(location);
+        synchronized (schedule) {
+            schedule.interval = minInterval;
+            long pollTime = System.currentTimeMillis() + minInterval;
+            schedule.nextPollTime = Math.min(schedule.nextPollTime, pollTime);
+            schedule.confirmTime = Math.min(schedule.confirmTime, pollTime);
+        }
+    }
+
+    /**
+     * Drops the schedules of the locations which are no longer bound.
+     */
+    public void retain(Collection<String> locations) {
+        schedules.keySet().retainAll(locations);
+    }
+
+    public void clear() {
+        schedules.clear();
+    }
+
+    private Schedule getSchedule(String location) {
+        Schedule schedule = schedules.get(location);
+        if (schedule == null) {
+            schedule = new Schedule();
+            schedule.interval = minInterval;
+            schedule.nextPollTime = Long.MAX_VALUE;
+            Schedule existing = schedules.putIfAbsent(location, schedule);
+            if (existing != null)
+                schedule = existing;
+        }
+        return schedule;
+    }
+
+    private void reschedule(Schedule schedule) {
+        //+-10% so polls of locations with the same interval drift apart
+        long jitter = schedule.interval / 5;
+        schedule.nextPollTime = System.currentTimeMillis() + schedule.interval - jitter / 2
+                + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+    }
+}
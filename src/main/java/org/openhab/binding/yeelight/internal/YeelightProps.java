@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+/**
+ * A snapshot of the properties of a Yeelight device decoded into primitive values.
+ * Properties the device did not report are unknown and read as 0.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightProps {
+
+    //property indexes, a get_prop request asks for a subset in this order
+    static final int POWER = 0;
+    static final int BRIGHT = 1;
+    static final int CT = 2;
+    static final int HUE = 3;
+    static final int SAT = 4;
+    static final int RGB = 5;
+    static final int NL_BR = 6;
+    static final int FLOWING = 7;
+
+    static final String[] NAMES = {"power", "bright", "ct", "hue", "sat", "rgb", "nl_br", "flowing"};
+
+    //properties carried by SSDP advertisements
+    static final int ADVERTISED = 1 << POWER | 1 << BRIGHT | 1 << CT | 1 << HUE | 1 << SAT | 1 << RGB;
+
+    private final int[] values = new int[NAMES.length];
+    private int known = 0;
+
+    /**
+     * @return the names of the properties of the mask in index order
+     */
+    static Object[] getNames(int mask) {
+        Object[] names = new Object[Integer.bitCount(mask)];
+        for (int i = 0, property = 0; property < NAMES.length; property++) {
+            if ((mask & 1 << property) != 0)
+                names[i++] = NAMES[property];
+        }
+        return names;
+    }
+
+    public int get(int property) {
+        return values[property];
+    }
+
+    public boolean isKnown(int property) {
+        return (known & (1 << property)) != 0;
+    }
+
+    public void set(int property, int value) {
+        values[property] = value;
+        known |= 1 << property;
+    }
+
+    /**
+     * @return a bit mask of the properties which are known here and were unknown
+     * or had another value in the previous snapshot, all known properties if there
+     * is no previous snapshot
+     */
+    public int diff(YeelightProps previous) {
+        if (previous == null)
+            return known;
+        int changed = known & ~previous.known;
+        for (int i = 0; i < values.length; i++) {
+            if (isKnown(i) && previous.isKnown(i) && values[i] != previous.values[i])
+                changed |= 1 << i;
+        }
+        return changed;
+    }
+
+    /**
+     * Takes over the known properties of the update.
+     */
+    public void merge(YeelightProps update) {
+        for (int i = 0; i < values.length; i++) {
+            if (update.isKnown(i))
+                set(i, update.values[i]);
+        }
+    }
+
+    /**
+     * Makes the properties of the mask unknown.
+     */
+    public void forget(int mask) {
+        known &= ~mask;
+    }
+
+    public YeelightProps copy() {
+        YeelightProps copy = new YeelightProps();
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+        copy.known = known;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < NAMES.length; i++) {
+            if (isKnown(i)) {
+                if (builder.length() > 1)
+                    builder.append(", ");
+                builder.append(NAMES[i]).append('=').append(values[i]);
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+/**
+ * Token bucket matching the command quota of a Yeelight device.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightRateLimiter {
+
+    private double capacity;
+    private double tokensPerMs;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param ratePerMinute sustained number of commands per minute
+     * @param burst         number of commands which may be sent at once
+     */
+    YeelightRateLimiter(int ratePerMinute, int burst) {
+        setRate(ratePerMinute, burst);
+        this.tokens = capacity;
+        this.lastRefill = System.currentTimeMillis();
+    }
+
+    public synchronized void setRate(int ratePerMinute, int burst) {
+        this.capacity = Math.max(1, burst);
+        this.tokensPerMs = Math.max(1, ratePerMinute) / 60000.0;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 if a token was taken, otherwise the time in ms until the next token is available
+     */
+    public synchronized long tryAcquire() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMs);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerMs));
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending response of a request sent to a Yeelight device. It is completed
+ * by the reader thread of the connection once the response with the matching id
+ * arrives, or failed when the connection breaks or the response deadline passes.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightResponseFuture implements Future<String> {
+
+    interface Callback {
+        void completed(String response);
+
+        void failed(IOException exception);
+    }
+
+    private final long id;
+    private final String method;
+    private final long deadline;
+
+    private boolean done = false;
+    private boolean cancelled = false;
+    private String response;
+    private IOException exception;
+    private List<Callback> callbacks;
+
+    YeelightResponseFuture(long id, String method, long deadline) {
+        this.id = id;
+        this.method = method;
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return an already failed future
+     */
+    static YeelightResponseFuture failed(String method, IOException exception) {
+        YeelightResponseFuture future = new YeelightResponseFuture(-1, method, 0);
+        future.fail(exception);
+        return future;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public boolean complete(String response) {
+        List<Callback> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.response = response;
+            done = true;
+            toNotify = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+        if (toNotify != null) {
+            for (Callback callback : toNotify) {
+                callback.completed(response);
+            }
+        }
+        return true;
+    }
+
+    public boolean fail(IOException exception) {
+        return fail(exception, false);
+    }
+
+    private boolean fail(IOException exception, boolean cancel) {
+        List<Callback> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.exception = exception;
+            cancelled = cancel;
+            done = true;
+            toNotify = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+        if (toNotify != null) {
+            for (Callback callback : toNotify) {
+                callback.failed(exception);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers a callback, it is called right away if the future is already done.
+     */
+    public void addCallback(Callback callback) {
+        synchronized (this) {
+            if (!done) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<>(2);
+                }
+                callbacks.add(callback);
+                return;
+            }
+        }
+        if (exception != null) {
+            callback.failed(exception);
+        } else {
+            callback.completed(response);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new InterruptedIOException(method + " was cancelled"), true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized String get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long end = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (!done) {
+            long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            wait(remaining);
+        }
+        return result();
+    }
+
+    private String result() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (exception != null) {
+            throw new ExecutionException(exception);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A Yeelight SSDP advertisement (search response or NOTIFY) parsed in place.
+ * Only the bounds of the interesting header values are remembered, strings are
+ * created on demand. An instance is reused for every received packet, so it
+ * must not be kept after the listener returns.
+ *
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+class YeelightSsdpMessage {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final byte[] OK_LINE = "HTTP/1.1 200 OK".getBytes(CHARSET);
+    private static final byte[] NOTIFY_LINE = "NOTIFY * HTTP/1.1".getBytes(CHARSET);
+    private static final byte[] LOCATION_PREFIX = "yeelight://".getBytes(CHARSET);
+    private static final byte[] MAX_AGE = "max-age=".getBytes(CHARSET);
+
+    //headers, HEADERS holds their lower case names
+    static final int ID = 0;
+    static final int LOCATION = 1;
+    static final int MODEL = 2;
+    static final int SUPPORT = 3;
+    static final int POWER = 4;
+    static final int BRIGHT = 5;
+    static final int CT = 6;
+    static final int RGB = 7;
+    static final int HUE = 8;
+    static final int SAT = 9;
+    static final int COLOR_MODE = 10;
+    static final int CACHE_CONTROL = 11;
+
+    static final String[] HEADERS = {"id", "location", "model", "support", "power", "bright", "ct", "rgb", "hue", "sat",
+            "color_mode", "cache-control"};
+    private static final byte[][] HEADER_BYTES = new byte[HEADERS.length][];
+
+    static {
+        for (int i = 0; i < HEADERS.length; i++) {
+            HEADER_BYTES[i] = HEADERS[i].getBytes(CHARSET);
+        }
+    }
+
+    private final int[] valueStart = new int[HEADERS.length];
+    private final int[] valueEnd = new int[HEADERS.length];
+    private byte[] data;
+
+    /**
+     * Parses a received packet, the buffer must be a heap buffer flipped for reading.
+     *
+     * @return false if the packet is no Yeelight advertisement
+     */
+    public boolean parse(ByteBuffer buffer) {
+        data = buffer.array();
+        int start = buffer.arrayOffset() + buffer.position();
+        int end = buffer.arrayOffset() + buffer.limit();
+        Arrays.fill(valueStart, -1);
+
+        if (!startsWith(start, end, OK_LINE) && !startsWith(start, end, NOTIFY_LINE)) {
+            return false;
+        }
+
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            parseHeader(lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+        }
+        return true;
+    }
+
+    private void parseHeader(int start, int end) {
+        int colon = start;
+        while (colon < end && data[colon] != ':') {
+            colon++;
+        }
+        if (colon == end) {
+            return;
+        }
+        int header = findHeader(start, colon);
+        if (header < 0) {
+            return;
+        }
+        int valueFrom = colon + 1;
+        int valueTo = end;
+        while (valueFrom < valueTo && data[valueFrom] <= ' ') {
+            valueFrom++;
+        }
+        while (valueTo > valueFrom && data[valueTo - 1] <= ' ') {
+            valueTo--;
+        }
+        valueStart[header] = valueFrom;
+        valueEnd[header] = valueTo;
+    }
+
+    private int findHeader(int start, int end) {
+        for (int i = 0; i < HEADER_BYTES.length; i++) {
+            byte[] name = HEADER_BYTES[i];
+            if (end - start != name.length) {
+                continue;
+            }
+            int j = 0;
+            while (j < name.length && toLowerCase(data[start + j]) == name[j]) {
+                j++;
+            }
+            if (j == name.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean has(int header) {
+        return valueStart[header] >= 0 && valueEnd[header] > valueStart[header];
+    }
+
+    /**
+     * @return the header value or an empty string if the header is missing
+     */
+    public String getString(int header) {
+        if (!has(header)) {
+            return "";
+        }
+        return new String(data, valueStart[header], valueEnd[header] - valueStart[header], CHARSET);
+    }
+
+    /**
+     * @return the numeric header value or -1 if the header is missing or not a number
+     */
+    public int getInt(int header) {
+        if (!has(header)) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = valueStart[header]; i < valueEnd[header]; i++) {
+            byte b = data[i];
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @return the max-age of the Cache-Control header in seconds or -1 if there is none
+     */
+    public int getMaxAge() {
+        if (!has(CACHE_CONTROL)) {
+            return -1;
+        }
+        int start = valueStart[CACHE_CONTROL];
+        int end = valueEnd[CACHE_CONTROL];
+        for (int i = start; i + MAX_AGE.length < end; i++) {
+            if (startsWith(i, end, MAX_AGE)) {
+                int value = 0;
+                for (int j = i + MAX_AGE.length; j < end && data[j] >= '0' && data[j] <= '9'; j++) {
+                    value = value * 10 + (data[j] - '0');
+                }
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the header value equals the given ASCII string
+     */
+    public boolean equals(int header, String value) {
+        if (!has(header) || valueEnd[header] - valueStart[header] != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (data[valueStart[header] + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the location without the yeelight:// scheme (ip:port) or null if there is none
+     */
+    public String getLocation() {
+        if (!has(LOCATION)) {
+            return null;
+        }
+        int start = valueStart[LOCATION];
+        int end = valueEnd[LOCATION];
+        if (end - start > LOCATION_PREFIX.length && startsWith(start, end, LOCATION_PREFIX)) {
+            return new String(data, start + LOCATION_PREFIX.length, end - start - LOCATION_PREFIX.length, CHARSET);
+        }
+        return null;
+    }
+}
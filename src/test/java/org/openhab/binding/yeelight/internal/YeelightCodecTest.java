@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+public class YeelightCodecTest {
+
+    private static final int ALL = (1 << YeelightProps.NAMES.length) - 1;
+
+    private static String encode(long id, String method, Object... params) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        YeelightCodec.encodeRequest(out, id, method, params);
+        return new String(out.toByteArray(), Charset.forName("US-ASCII"));
+    }
+
+    @Test
+    public void encodesRequest() {
+        assertEquals("{\"id\":12,\"method\":\"set_bright\",\"params\":[50,\"smooth\",500]}\r\n",
+                encode(12, "set_bright", 50, "smooth", 500));
+        assertEquals("{\"id\":0,\"method\":\"toggle\",\"params\":[]}\r\n", encode(0, "toggle"));
+    }
+
+    @Test
+    public void encodesNegativeAndLongNumbers() {
+        assertEquals("{\"id\":1,\"method\":\"start_cf\",\"params\":[-1,9876543210]}\r\n",
+                encode(1, "start_cf", -1, 9876543210L));
+    }
+
+    @Test
+    public void escapesStrings() {
+        assertEquals("{\"id\":1,\"method\":\"set_name\",\"params\":[\"a\\\"b\\\\c\\u000a\\u00e9\"]}\r\n",
+                encode(1, "set_name", "a\"b\\c\n\u00e9"));
+    }
+
+    @Test
+    public void decodesId() {
+        assertEquals(7, YeelightCodec.decodeId("{\"id\":7, \"result\":[\"ok\"]}"));
+        assertEquals(8, YeelightCodec.decodeId("{\"result\":[\"ok\"],\"id\":8}"));
+        assertEquals(-1, YeelightCodec.decodeId("{\"method\":\"props\",\"params\":{\"power\":\"on\"}}"));
+        assertEquals(-1, YeelightCodec.decodeId("not json"));
+    }
+
+    @Test
+    public void decodesError() {
+        assertEquals("unsupported method",
+                YeelightCodec.decodeError("{\"id\":2,\"error\":{\"code\":-1,\"message\":\"unsupported method\"}}"));
+        assertEquals("unknown error", YeelightCodec.decodeError("{\"id\":2,\"error\":{\"code\":-1}}"));
+        assertNull(YeelightCodec.decodeError("{\"id\":2,\"result\":[\"ok\"]}"));
+    }
+
+    @Test
+    public void decodesProps() {
+        YeelightProps props = new YeelightProps();
+        assertTrue(YeelightCodec.decodeProps(
+                "{\"id\":3,\"result\":[\"on\",\"75\",\"4000\",\"120\",\"80\",\"16711680\",\"0\",\"1\"]}", ALL, props));
+        assertEquals(1, props.get(YeelightProps.POWER));
+        assertEquals(75, props.get(YeelightProps.BRIGHT));
+        assertEquals(4000, props.get(YeelightProps.CT));
+        assertEquals(120, props.get(YeelightProps.HUE));
+        assertEquals(80, props.get(YeelightProps.SAT));
+        assertEquals(0xff0000, props.get(YeelightProps.RGB));
+        assertEquals(0, props.get(YeelightProps.NL_BR));
+        assertEquals(1, props.get(YeelightProps.FLOWING));
+    }
+
+    @Test
+    public void decodesPropsOfMaskInIndexOrder() {
+        YeelightProps props = new YeelightProps();
+        int mask = 1 << YeelightProps.POWER | 1 << YeelightProps.CT;
+        assertTrue(YeelightCodec.decodeProps("{\"id\":3,\"result\":[\"off\",\"2700\"]}", mask, props));
+        assertEquals(0, props.get(YeelightProps.POWER));
+        assertEquals(2700, props.get(YeelightProps.CT));
+        assertFalse(props.isKnown(YeelightProps.BRIGHT));
+    }
+
+    @Test
+    public void decodesUnsupportedPropAsZero() {
+        YeelightProps props = new YeelightProps();
+        assertTrue(YeelightCodec.decodeProps("{\"id\":3,\"result\":[\"\"]}", 1 << YeelightProps.NL_BR, props));
+        assertTrue(props.isKnown(YeelightProps.NL_BR));
+        assertEquals(0, props.get(YeelightProps.NL_BR));
+    }
+
+    @Test
+    public void rejectsPropsWithoutResult() {
+        assertFalse(YeelightCodec.decodeProps("{\"id\":3,\"error\":{\"code\":-1}}", ALL, new YeelightProps()));
+        assertFalse(YeelightCodec.decodeProps("{\"id\":3,\"result\":[", ALL, new YeelightProps()));
+    }
+
+    @Test
+    public void decodesNotification() {
+        YeelightProps props = new YeelightProps();
+        props.set(YeelightProps.CT, 4000);
+        assertTrue(YeelightCodec.decodeNotification(
+                "{\"method\":\"props\",\"params\":{\"power\":\"off\",\"bright\":10,\"model\":\"color\"}}", props));
+        assertEquals(0, props.get(YeelightProps.POWER));
+        assertEquals(10, props.get(YeelightProps.BRIGHT));
+        //properties which are not notified are kept
+        assertEquals(4000, props.get(YeelightProps.CT));
+        assertFalse(props.isKnown(YeelightProps.RGB));
+    }
+
+    @Test
+    public void rejectsOtherNotifications() {
+        assertFalse(YeelightCodec.decodeNotification("{\"method\":\"other\",\"params\":{\"power\":\"on\"}}",
+                new YeelightProps()));
+        assertFalse(YeelightCodec.decodeNotification("{\"method\":\"props\",\"params\":{", new YeelightProps()));
+        assertTrue(YeelightCodec.isNotification("{\"method\":\"props\",\"params\":{}}"));
+        assertFalse(YeelightCodec.isNotification("{\"id\":1,\"result\":[\"ok\"]}"));
+    }
+}
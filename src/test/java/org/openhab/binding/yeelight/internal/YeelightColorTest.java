@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+public class YeelightColorTest {
+
+    @Test
+    public void packsChannels() {
+        int rgb = YeelightColor.pack(0x12, 0x34, 0x56);
+        assertEquals(0x123456, rgb);
+        assertEquals(0x12, YeelightColor.getRed(rgb));
+        assertEquals(0x34, YeelightColor.getGreen(rgb));
+        assertEquals(0x56, YeelightColor.getBlue(rgb));
+    }
+
+    @Test
+    public void convertsPrimaryColors() {
+        assertEquals(0xff0000, YeelightColor.fromHSB(0, 100, 100));
+        assertEquals(0x00ff00, YeelightColor.fromHSB(120, 100, 100));
+        assertEquals(0x0000ff, YeelightColor.fromHSB(240, 100, 100));
+        assertEquals(0xffffff, YeelightColor.fromHSB(0, 0, 100));
+        assertEquals(0x000000, YeelightColor.fromHSB(200, 100, 0));
+    }
+
+    @Test
+    public void normalizesInput() {
+        assertEquals(YeelightColor.fromHSB(10, 100, 100), YeelightColor.fromHSB(370, 100, 100));
+        assertEquals(YeelightColor.fromHSB(350, 100, 100), YeelightColor.fromHSB(-10, 100, 100));
+        assertEquals(YeelightColor.fromHSB(60, 100, 100), YeelightColor.fromHSB(60, 150, 120));
+    }
+
+    @Test
+    public void roundTripsFullColors() {
+        for (int hue = 0; hue < 360; hue++) {
+            for (int saturation = 1; saturation <= 100; saturation++) {
+                int rgb = YeelightColor.fromHSB(hue, saturation, 100);
+                assertEquals(100, YeelightColor.getBrightness(rgb));
+                assertClose("saturation of " + hue + "," + saturation, saturation, YeelightColor.getSaturation(rgb), 1);
+                //the hue of pale colors is only as exact as the 8 bit channels allow
+                if (saturation >= 50)
+                    assertClose("hue of " + hue + "," + saturation, hue, YeelightColor.getHue(rgb), 1);
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsRgb() {
+        for (int red = 0; red < 256; red += 15) {
+            for (int green = 0; green < 256; green += 15) {
+                for (int blue = 0; blue < 256; blue += 15) {
+                    int rgb = YeelightColor.pack(red, green, blue);
+                    int back = YeelightColor.fromHSB(YeelightColor.getHue(rgb), YeelightColor.getSaturation(rgb),
+                            YeelightColor.getBrightness(rgb));
+                    //whole number hue, saturation and brightness lose up to a few steps of a channel
+                    assertClose("red of " + Integer.toHexString(rgb), red, YeelightColor.getRed(back), 5);
+                    assertClose("green of " + Integer.toHexString(rgb), green, YeelightColor.getGreen(back), 5);
+                    assertClose("blue of " + Integer.toHexString(rgb), blue, YeelightColor.getBlue(back), 5);
+                }
+            }
+        }
+    }
+
+    private static void assertClose(String message, int expected, int actual, int tolerance) {
+        int distance = Math.abs(expected - actual);
+        //hue wraps around
+        if (message.startsWith("hue"))
+            distance = Math.min(distance, 360 - distance);
+        assertTrue(message + ": expected " + expected + " but was " + actual, distance <= tolerance);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+public class YeelightLocationHealthTest {
+
+    private final YeelightLocationHealth health = new YeelightLocationHealth();
+
+    @Test
+    public void startsHealthy() {
+        assertEquals(YeelightLocationHealth.State.HEALTHY, health.getState());
+        assertTrue(health.allowRequest());
+    }
+
+    @Test
+    public void goesOfflineAfterRepeatedFailures() {
+        assertEquals(YeelightLocationHealth.State.HEALTHY, health.failure());
+        assertEquals(YeelightLocationHealth.State.SUSPECT, health.getState());
+        assertTrue(health.allowRequest());
+
+        assertEquals(YeelightLocationHealth.State.SUSPECT, health.failure());
+        assertEquals(YeelightLocationHealth.State.OFFLINE, health.getState());
+        //the first probe waits for the backoff
+        assertFalse(health.allowRequest());
+
+        assertEquals(YeelightLocationHealth.State.OFFLINE, health.failure());
+        assertEquals(YeelightLocationHealth.State.OFFLINE, health.getState());
+    }
+
+    @Test
+    public void recoversOnSuccess() {
+        health.failure();
+        health.failure();
+        assertEquals(YeelightLocationHealth.State.OFFLINE, health.success());
+        assertEquals(YeelightLocationHealth.State.HEALTHY, health.getState());
+        assertTrue(health.allowRequest());
+
+        //the failures are counted again from the start
+        health.failure();
+        assertEquals(YeelightLocationHealth.State.SUSPECT, health.getState());
+    }
+
+    @Test
+    public void seenOfflineLocationIsProbedAtOnce() {
+        health.failure();
+        health.failure();
+        assertFalse(health.allowRequest());
+
+        assertEquals(YeelightLocationHealth.State.OFFLINE, health.seen());
+        assertEquals(YeelightLocationHealth.State.SUSPECT, health.getState());
+        assertTrue(health.allowRequest());
+
+        //a failed probe makes it offline again
+        assertEquals(YeelightLocationHealth.State.SUSPECT, health.failure());
+        assertEquals(YeelightLocationHealth.State.OFFLINE, health.getState());
+    }
+
+    @Test
+    public void seenDoesNotChangeOtherStates() {
+        assertEquals(YeelightLocationHealth.State.HEALTHY, health.seen());
+        assertEquals(YeelightLocationHealth.State.HEALTHY, health.getState());
+
+        health.failure();
+        assertEquals(YeelightLocationHealth.State.SUSPECT, health.seen());
+        assertEquals(YeelightLocationHealth.State.SUSPECT, health.getState());
+    }
+}
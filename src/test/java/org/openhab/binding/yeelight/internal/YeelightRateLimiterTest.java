@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ * <p>
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.yeelight.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ondrej Pecta
+ * @since 1.9.0
+ */
+public class YeelightRateLimiterTest {
+
+    @Test
+    public void allowsBurst() {
+        YeelightRateLimiter limiter = new YeelightRateLimiter(60, 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire());
+        }
+        long delay = limiter.tryAcquire();
+        //one command per second
+        assertTrue("delay " + delay, delay > 0 && delay <= 1000);
+    }
+
+    @Test
+    public void refills() throws InterruptedException {
+        //one token every 10ms
+        YeelightRateLimiter limiter = new YeelightRateLimiter(6000, 1);
+        assertEquals(0, limiter.tryAcquire());
+        long delay = limiter.tryAcquire();
+        assertTrue("delay " + delay, delay > 0 && delay <= 10);
+
+        Thread.sleep(delay + 5);
+        assertEquals(0, limiter.tryAcquire());
+    }
+
+    @Test
+    public void refillsUpToBurst() throws InterruptedException {
+        YeelightRateLimiter limiter = new YeelightRateLimiter(6000, 2);
+        assertEquals(0, limiter.tryAcquire());
+        assertEquals(0, limiter.tryAcquire());
+
+        //long enough for far more tokens than the burst
+        Thread.sleep(100);
+        assertEquals(0, limiter.tryAcquire());
+        assertEquals(0, limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire() > 0);
+    }
+
+    @Test
+    public void lowerBurstDropsTokens() {
+        YeelightRateLimiter limiter = new YeelightRateLimiter(60, 5);
+        limiter.setRate(60, 1);
+        assertEquals(0, limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire() > 0);
+    }
+}